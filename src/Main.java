@@ -1,27 +1,65 @@
+import chapter02.creating.and.destroying.objects.Item1_ConsiderStaticFactoryMethodsInsteadOfConstructors;
+import chapter02.creating.and.destroying.objects.Item2_ConsiderABuilderWhenFacedWithManyConstructorParameters;
+import chapter02.creating.and.destroying.objects.Item3_EnforceSingletonPropertyWithPrivateConstructorOrEnumType;
+import chapter02.creating.and.destroying.objects.Item4_EnforceNonInstantiabilityWithPrivateConstructor;
+import chapter02.creating.and.destroying.objects.Item5_PreferDependencyInjectionToHardwiringResources;
+import chapter02.creating.and.destroying.objects.Item6_AvoidCreatingUnnecessaryObjects;
+import chapter02.creating.and.destroying.objects.Item7_EliminateObsoleteObjectReferences;
+import chapter02.creating.and.destroying.objects.Item8_AvoidFinalizersAndCleaners;
+import chapter03.methods.common.to.all.objects.Item10_ObeyTheGeneralContractWhenOverridingEquals;
+import chapter03.methods.common.to.all.objects.Item11_AlwaysOverrideHasCodeWhenYouOverrideEquals;
+import chapter03.methods.common.to.all.objects.Item12_AlwaysOverrideToString;
+import chapter03.methods.common.to.all.objects.Item13_OverrideCloneJudiciously;
+import chapter03.methods.common.to.all.objects.Item14_ConsideringImplementingComparable;
+import chapter04.classes.and.interfaces.Item15_MinimizeTheAccessibilityOfClassesAndMembers;
+import chapter04.classes.and.interfaces.Item16_InPublicClassesUseAccessorMethodsNotPublicFields;
+import chapter04.classes.and.interfaces.Item17_MinimizeMutability;
+import chapter04.classes.and.interfaces.Item18_FavorCompositionOverInheritance;
+import chapter04.classes.and.interfaces.Item19_DesignAndDocumentForInheritanceOrElseProhibitIt;
 import chapter04.classes.and.interfaces.Item20_PreferInterfacesToAbstractClasses;
+import chapter04.classes.and.interfaces.Item21_DesignInterfacesForPosterity;
+import chapter04.classes.and.interfaces.Item22_UseInterfacesOnlyToDefineTypes;
+import chapter04.classes.and.interfaces.Item23_PreferClassHierarchiesToTaggedClasses;
 import chapter04.classes.and.interfaces.Item24_FavorStaticMemberClassesOverNonStatic;
 import interfaces.ILesson;
+import runner.LessonResult;
+import runner.LessonRunner;
 
-import java.util.Arrays;
+import java.util.List;
 
 public class Main {
-    public static void main(String[] args) {
-        ILesson[] lessons = {
-//                new Item1_ConsiderStaticFactoryMethodsInsteadOfConstructors(),
-//                new Item2_ConsiderABuilderWhenFacedWithManyConstructorParameters(),
+    private static final List<Class<? extends ILesson>> LESSONS = List.of(
+            Item1_ConsiderStaticFactoryMethodsInsteadOfConstructors.class,
+            Item2_ConsiderABuilderWhenFacedWithManyConstructorParameters.class,
+            Item3_EnforceSingletonPropertyWithPrivateConstructorOrEnumType.class,
+            Item4_EnforceNonInstantiabilityWithPrivateConstructor.class,
+            Item5_PreferDependencyInjectionToHardwiringResources.class,
+            Item6_AvoidCreatingUnnecessaryObjects.class,
+            Item7_EliminateObsoleteObjectReferences.class,
+            Item8_AvoidFinalizersAndCleaners.class,
+            Item10_ObeyTheGeneralContractWhenOverridingEquals.class,
+            Item11_AlwaysOverrideHasCodeWhenYouOverrideEquals.class,
+            Item12_AlwaysOverrideToString.class,
+            Item13_OverrideCloneJudiciously.class,
+            Item14_ConsideringImplementingComparable.class,
+            Item15_MinimizeTheAccessibilityOfClassesAndMembers.class,
+            Item16_InPublicClassesUseAccessorMethodsNotPublicFields.class,
+            Item17_MinimizeMutability.class,
+            Item18_FavorCompositionOverInheritance.class,
+            Item19_DesignAndDocumentForInheritanceOrElseProhibitIt.class,
+            Item20_PreferInterfacesToAbstractClasses.class,
+            Item21_DesignInterfacesForPosterity.class,
+            Item22_UseInterfacesOnlyToDefineTypes.class,
+            Item23_PreferClassHierarchiesToTaggedClasses.class,
+            Item24_FavorStaticMemberClassesOverNonStatic.class
+    );
 
-//                new Item5_PreferDependencyInjectionToHardwiringResources(),
-//                new Item8_AvoidFinalizersAndCleaners(),
-//                new Item10_ObeyTheGeneralContractWhenOverridingEquals(),
-//                new Item12_AlwaysOverrideToString(),
-//                new Item13_OverrideCloneJudiciously(),
-//                new Item14_ConsideringImplementingComparable(),
-//                new Item15_MinimizeTheAccessibilityOfClassesAndMembers(),
-//                new Item20_PreferInterfacesToAbstractClasses(),
-                new Item24_FavorStaticMemberClassesOverNonStatic(),
-        };
-
-
-        Arrays.stream(lessons).forEach(ILesson::doLesson);
+    /**
+     * e.g. {@code Main Item24_}, {@code Main -threads 4 Item1[0-4]_} or {@code Main -virtual}; see {@link LessonRunner}.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        List<LessonResult> results = new LessonRunner(LESSONS).run(args);
+        if (results.stream().anyMatch(LessonResult::failed))
+            System.exit(1);
     }
-}
\ No newline at end of file
+}
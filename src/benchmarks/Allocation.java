@@ -0,0 +1,88 @@
+package benchmarks;
+
+import java.lang.management.ManagementFactory;
+import java.util.function.LongPredicate;
+
+/**
+ * Per-thread allocation counters, available on HotSpot through {@code com.sun.management.ThreadMXBean}.
+ *
+ * The counters of all live threads can be captured at once in a {@link Snapshot}, which is how work handed to other
+ * threads (parallel streams, fork/join pools) is accounted for.
+ */
+public final class Allocation {
+    private static final com.sun.management.ThreadMXBean THREADS = threadBean();
+
+    private Allocation() {
+    }
+
+    private static com.sun.management.ThreadMXBean threadBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean bean
+                && bean.isThreadAllocatedMemorySupported()) {
+            bean.setThreadAllocatedMemoryEnabled(true);
+            return bean;
+        }
+        return null;
+    }
+
+    /**
+     * @return bytes allocated so far by the calling thread, or -1 if the JVM does not expose the counter
+     */
+    public static long currentThreadAllocatedBytes() {
+        return THREADS == null ? -1 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    /**
+     * @return the allocation counters of all live threads, or null if the JVM does not expose them
+     */
+    public static Snapshot snapshot() {
+        if (THREADS == null)
+            return null;
+        long[] ids = THREADS.getAllThreadIds();
+        return new Snapshot(ids, THREADS.getThreadAllocatedBytes(ids));
+    }
+
+    /**
+     * @return CPU time consumed so far by the calling thread in nanoseconds, or -1 if unsupported
+     */
+    public static long currentThreadCpuNanos() {
+        return THREADS == null || !THREADS.isCurrentThreadCpuTimeSupported() ? -1 : THREADS.getCurrentThreadCpuTime();
+    }
+
+    /**
+     * The bytes each live thread had allocated at one instant.
+     */
+    public static final class Snapshot {
+        private final long[] ids;
+        private final long[] bytes;
+
+        private Snapshot(long[] ids, long[] bytes) {
+            this.ids = ids;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Sums, over the threads alive now, what each allocated since {@code before}; a thread started in between counts
+         * in full. What a thread allocated before it terminated is lost, so work should run on threads that outlive it.
+         *
+         * @param excluded thread ids left out of the sum
+         */
+        public long allocatedSince(Snapshot before, LongPredicate excluded) {
+            long sum = 0;
+            for (int i = 0; i < ids.length; i++) {
+                // -1 for threads that terminated while the counters were read
+                if (bytes[i] < 0 || excluded.test(ids[i]))
+                    continue;
+                sum += bytes[i] - Math.max(0, before.bytesOf(ids[i]));
+            }
+            return sum;
+        }
+
+        private long bytesOf(long id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] == id)
+                    return bytes[i];
+            }
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package benchmarks;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Daemon threads that repeat a step until closed, used as a benchmark fixture to measure one operation
+ * while other threads keep the data structure busy. Closing stops and joins the threads and prints how many
+ * steps they completed, so the background throughput is reported next to the measured one.
+ */
+public final class BackgroundLoad implements AutoCloseable {
+    // ids of the threads of every running load, kept out of the measured benchmark's allocation
+    private static final Set<Long> RUNNING = ConcurrentHashMap.newKeySet();
+
+    private final String name;
+    private final Thread[] threads;
+    private final LongAdder steps = new LongAdder();
+    private final long started = System.nanoTime();
+    private volatile boolean running = true;
+
+    private BackgroundLoad(String name, int threadCount, Step step) {
+        this.name = name;
+        this.threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            int id = t;
+            threads[t] = new Thread(() -> {
+                long i = 0;
+                while (running) {
+                    step.run(id, i++);
+                    steps.increment();
+                }
+            }, name + "-" + t);
+            threads[t].setDaemon(true);
+        }
+    }
+
+    public static BackgroundLoad start(String name, int threadCount, Step step) {
+        BackgroundLoad load = new BackgroundLoad(name, threadCount, step);
+        for (Thread t : load.threads) {
+            RUNNING.add(t.getId());
+            t.start();
+        }
+        return load;
+    }
+
+    /**
+     * If interrupted while joining, returns without waiting for the remaining threads and keeps the interrupt status;
+     * they are daemons and stop at their next step.
+     */
+    @Override
+    public void close() {
+        running = false;
+        try {
+            for (Thread t : threads)
+                t.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } finally {
+            for (Thread t : threads)
+                RUNNING.remove(t.getId());
+        }
+        double seconds = (System.nanoTime() - started) / 1e9;
+        System.out.printf("    %s: %d threads, %.0f ops/s in background%n", name, threads.length, steps.sum() / seconds);
+    }
+
+    static boolean isBackgroundThread(long id) {
+        return RUNNING.contains(id);
+    }
+
+    @FunctionalInterface
+    public interface Step {
+        /**
+         * @param thread index of the background thread
+         * @param iteration number of steps this thread has completed so far
+         */
+        void run(int thread, long iteration);
+    }
+}
@@ -0,0 +1,68 @@
+package benchmarks;
+
+import java.util.Locale;
+
+/**
+ * Summary of one benchmark: time per operation with a 99.9% confidence half-width, and the GC profile.
+ */
+public final class BenchmarkResult {
+    private final String name;
+    private final double mean;
+    private final double error;
+    private final double bytesPerOp;
+    private final long gcCount;
+    private final long gcMillis;
+
+    BenchmarkResult(String name, double[] nsPerOp, double bytesPerOp, long gcCount, long gcMillis) {
+        this.name = name;
+        double sum = 0;
+        for (double v : nsPerOp)
+            sum += v;
+        this.mean = sum / nsPerOp.length;
+        double sq = 0;
+        for (double v : nsPerOp)
+            sq += (v - mean) * (v - mean);
+        // 3.29 standard errors ~ 99.9% for a normal distribution
+        this.error = nsPerOp.length < 2 ? Double.NaN : 3.29 * Math.sqrt(sq / (nsPerOp.length - 1)) / Math.sqrt(nsPerOp.length);
+        this.bytesPerOp = bytesPerOp;
+        this.gcCount = gcCount;
+        this.gcMillis = gcMillis;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public double mean() {
+        return mean;
+    }
+
+    public double error() {
+        return error;
+    }
+
+    public double bytesPerOp() {
+        return bytesPerOp;
+    }
+
+    /**
+     * @return megabytes (10^6 bytes) allocated per second of benchmark time, by the benchmark thread and any threads it
+     * hands work to
+     */
+    public double allocationRate() {
+        return bytesPerOp / mean * 1e3;
+    }
+
+    public long gcCount() {
+        return gcCount;
+    }
+
+    public long gcMillis() {
+        return gcMillis;
+    }
+
+    public String format() {
+        return String.format(Locale.ROOT, "%-60s %14.3f ± %-10.3f ns/op %12.1f B/op %9.1f MB/s %6d gc %6d ms",
+                name, mean, error, bytesPerOp, allocationRate(), gcCount, gcMillis);
+    }
+}
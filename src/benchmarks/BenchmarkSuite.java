@@ -0,0 +1,247 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.regex.Pattern;
+
+/**
+ * A small, dependency-free micro benchmark harness.
+ *
+ * Each registered workload is warmed up, then measured over a number of fixed-time iterations.
+ * Alongside the time per operation, every iteration records the bytes allocated by the benchmark thread and any
+ * threads it hands work to (but not by a {@link BackgroundLoad}), and the number of collections (and time spent in them) reported by the garbage collector beans,
+ * which plays the role of JMH's {@code -prof gc}.
+ *
+ * Every benchmark runs in its own copy of the {@link Loop} class, so one workload's types do not make the call site
+ * megamorphic for the workloads measured after it.
+ *
+ * Command line: {@code [-wi warmupIterations] [-i iterations] [-t iterationMillis] [-rf results.csv] [regex...]}
+ */
+public final class BenchmarkSuite {
+    private final String name;
+    private final List<Entry> entries = new ArrayList<>();
+
+    private int warmupIterations = 3;
+    private int iterations = 5;
+    private long iterationMillis = 500;
+    private String resultFile;
+    private final List<Pattern> filters = new ArrayList<>();
+
+    public BenchmarkSuite(String name) {
+        this.name = name;
+    }
+
+    public BenchmarkSuite add(String benchmark, Workload workload) {
+        return add(benchmark, 1, workload);
+    }
+
+    /**
+     * @param opsPerInvocation number of logical operations performed by one call of the workload,
+     *                         so that batched workloads (e.g. a loop over an array) are reported per element
+     */
+    public BenchmarkSuite add(String benchmark, long opsPerInvocation, Workload workload) {
+        return add(benchmark, opsPerInvocation, () -> () -> { }, workload);
+    }
+
+    /**
+     * @param setup run just before the benchmark is warmed up; the returned resource is closed once it has been measured,
+     *              which lets a benchmark run background load (e.g. writer threads) only while it is itself measured
+     */
+    public BenchmarkSuite add(String benchmark, long opsPerInvocation, Callable<? extends AutoCloseable> setup, Workload workload) {
+        if (opsPerInvocation <= 0)
+            throw new IllegalArgumentException("opsPerInvocation must be positive");
+        entries.add(new Entry(benchmark, opsPerInvocation, setup, workload));
+        return this;
+    }
+
+    public List<BenchmarkResult> run(String[] args) {
+        parse(args);
+        List<BenchmarkResult> results = new ArrayList<>();
+        System.out.printf("# %s: %d warmup, %d measurement iterations of %d ms%n",
+                name, warmupIterations, iterations, iterationMillis);
+        for (Entry e : entries) {
+            if (!selected(e.name))
+                continue;
+            try {
+                AutoCloseable fixture = e.setup.call();
+                try {
+                    BenchmarkResult r = measure(e);
+                    results.add(r);
+                    System.out.println(r.format());
+                } finally {
+                    fixture.close();
+                }
+            } catch (Exception ex) {
+                System.out.printf("%-60s FAILED: %s%n", e.name, ex);
+            }
+        }
+        if (resultFile != null)
+            writeCsv(results);
+        return results;
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-wi" -> warmupIterations = Integer.parseInt(args[++i]);
+                case "-i" -> iterations = Integer.parseInt(args[++i]);
+                case "-t" -> iterationMillis = Long.parseLong(args[++i]);
+                case "-rf" -> resultFile = args[++i];
+                default -> filters.add(Pattern.compile(args[i]));
+            }
+        }
+        if (iterations <= 0 || warmupIterations < 0 || iterationMillis <= 0)
+            throw new IllegalArgumentException("iterations and iteration time must be positive");
+    }
+
+    private boolean selected(String benchmark) {
+        if (filters.isEmpty())
+            return true;
+        for (Pattern p : filters) {
+            if (p.matcher(benchmark).find())
+                return true;
+        }
+        return false;
+    }
+
+    private BenchmarkResult measure(Entry e) throws Exception {
+        Blackhole bh = new Blackhole();
+        MethodHandle loop = isolatedLoop();
+        long batch = calibrate(loop, e.workload, bh);
+        for (int i = 0; i < warmupIterations; i++)
+            iteration(loop, e.workload, bh, batch);
+
+        double[] nsPerOp = new double[iterations];
+        double bytes = 0;
+        long gcCount = 0;
+        long gcMillis = 0;
+        long ops = 0;
+        for (int i = 0; i < iterations; i++) {
+            Sample s = iteration(loop, e.workload, bh, batch);
+            long logicalOps = s.invocations * e.opsPerInvocation;
+            nsPerOp[i] = (double) s.nanos / logicalOps;
+            bytes += s.allocatedBytes;
+            ops += logicalOps;
+            gcCount += s.gcCount;
+            gcMillis += s.gcMillis;
+        }
+        bh.drain();
+        return new BenchmarkResult(e.name, nsPerOp, bytes < 0 ? Double.NaN : bytes / ops, gcCount, gcMillis);
+    }
+
+    // Grow the batch until a single batch takes about a millisecond, so that reading the clock stays out of the measurement
+    private static long calibrate(MethodHandle loop, Workload w, Blackhole bh) throws Exception {
+        // untimed: the first call links the method handle, which alone can take over a millisecond
+        run(loop, w, bh, 1);
+        long batch = 1;
+        while (batch < (1L << 30)) {
+            long start = System.nanoTime();
+            run(loop, w, bh, batch);
+            if (System.nanoTime() - start >= 1_000_000L)
+                break;
+            batch <<= 1;
+        }
+        return batch;
+    }
+
+    private Sample iteration(MethodHandle loop, Workload w, Blackhole bh, long batch) throws Exception {
+        long deadline = iterationMillis * 1_000_000L;
+        long gcCountBefore = gcCount();
+        long gcMillisBefore = gcMillis();
+        Allocation.Snapshot allocBefore = Allocation.snapshot();
+        long invocations = 0;
+        long start = System.nanoTime();
+        long elapsed;
+        do {
+            run(loop, w, bh, batch);
+            invocations += batch;
+            elapsed = System.nanoTime() - start;
+        } while (elapsed < deadline);
+        Allocation.Snapshot allocAfter = Allocation.snapshot();
+        return new Sample(invocations, elapsed,
+                allocBefore == null ? -1 : allocAfter.allocatedSince(allocBefore, BackgroundLoad::isBackgroundThread),
+                gcCount() - gcCountBefore, gcMillis() - gcMillisBefore);
+    }
+
+    private static final MethodType LOOP_TYPE = MethodType.methodType(void.class, Workload.class, Blackhole.class, long.class);
+    private static final byte[] LOOP_CLASS = loopClass();
+
+    private static byte[] loopClass() {
+        try (InputStream in = Loop.class.getResourceAsStream(Loop.class.getSimpleName() + ".class")) {
+            return in == null ? null : in.readAllBytes();
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    // Loop.run, from a copy of the class defined by a fresh loader; the shared Loop if its bytes cannot be read
+    private static MethodHandle isolatedLoop() throws ReflectiveOperationException {
+        Class<?> loop = LOOP_CLASS == null ? Loop.class
+                : new IsolatingLoader(Loop.class.getClassLoader()).define(Loop.class.getName(), LOOP_CLASS);
+        return MethodHandles.publicLookup().findStatic(loop, "run", LOOP_TYPE);
+    }
+
+    private static void run(MethodHandle loop, Workload w, Blackhole bh, long batch) throws Exception {
+        try {
+            loop.invokeExact(w, bh, batch);
+        } catch (Exception | Error ex) {
+            throw ex;
+        } catch (Throwable t) {
+            throw new IllegalStateException(t);
+        }
+    }
+
+    private static final class IsolatingLoader extends ClassLoader {
+        IsolatingLoader(ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+
+    static long gcCount() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            n += Math.max(0, gc.getCollectionCount());
+        return n;
+    }
+
+    static long gcMillis() {
+        long n = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+            n += Math.max(0, gc.getCollectionTime());
+        return n;
+    }
+
+    private void writeCsv(List<BenchmarkResult> results) {
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(Paths.get(resultFile)))) {
+            out.println("suite,benchmark,ns_per_op,error,bytes_per_op,alloc_mb_per_s,gc_count,gc_ms");
+            for (BenchmarkResult r : results) {
+                out.printf(Locale.ROOT, "%s,\"%s\",%.3f,%.3f,%.1f,%.1f,%d,%d%n", name, r.name(),
+                        r.mean(), r.error(), r.bytesPerOp(), r.allocationRate(), r.gcCount(), r.gcMillis());
+            }
+        } catch (IOException ex) {
+            System.out.printf("could not write %s: %s%n", resultFile, ex);
+        }
+    }
+
+    private record Entry(String name, long opsPerInvocation, Callable<? extends AutoCloseable> setup, Workload workload) {
+    }
+
+    private record Sample(long invocations, long nanos, long allocatedBytes, long gcCount, long gcMillis) {
+    }
+}
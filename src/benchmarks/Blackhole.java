@@ -0,0 +1,39 @@
+package benchmarks;
+
+/**
+ * Sink for benchmark results so that the JIT cannot prove them unused and remove the work.
+ * Values are folded into a field that is published once the iteration completes,
+ * so consuming a primitive never boxes it.
+ */
+public final class Blackhole {
+    private long sink;
+    private Object last;
+
+    Blackhole() {
+    }
+
+    public void consume(long v) {
+        sink ^= v;
+    }
+
+    public void consume(int v) {
+        sink ^= v;
+    }
+
+    public void consume(double v) {
+        sink ^= Double.doubleToRawLongBits(v);
+    }
+
+    public void consume(boolean v) {
+        sink ^= v ? 1 : 0;
+    }
+
+    public void consume(Object o) {
+        last = o;
+    }
+
+    void drain() {
+        sink = 0;
+        last = null;
+    }
+}
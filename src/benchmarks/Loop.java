@@ -0,0 +1,16 @@
+package benchmarks;
+
+/**
+ * The measurement loop. {@link BenchmarkSuite} loads a separate copy of this class for every benchmark, so each
+ * workload's call site below keeps a type profile of its own and stays monomorphic, like the loop JMH generates per
+ * benchmark. A copy lives in a runtime package of its own, so only public types and members may be used here.
+ */
+public final class Loop {
+    private Loop() {
+    }
+
+    public static void run(Workload w, Blackhole bh, long batch) throws Exception {
+        for (long i = 0; i < batch; i++)
+            w.run(bh);
+    }
+}
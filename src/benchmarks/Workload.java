@@ -0,0 +1,10 @@
+package benchmarks;
+
+/**
+ * A single benchmarked operation. Results must be handed to the {@link Blackhole},
+ * otherwise the JIT is free to eliminate the work being measured.
+ */
+@FunctionalInterface
+public interface Workload {
+    void run(Blackhole bh) throws Exception;
+}
@@ -0,0 +1,22 @@
+package chapter02.creating.and.destroying.objects;
+
+import benchmarks.BenchmarkSuite;
+
+/**
+ * Measures the performance claims made by the chapter 2 lessons.
+ * Run with {@code -wi/-i/-t} to change the iteration setup and any regex to select benchmarks, e.g. {@code Item6}.
+ */
+public class Chapter02Benchmarks {
+
+    public static void main(String[] args) {
+        BenchmarkSuite suite = new BenchmarkSuite("chapter02");
+        Item1_ConsiderStaticFactoryMethodsInsteadOfConstructors.benchmarks(suite);
+        Item2_ConsiderABuilderWhenFacedWithManyConstructorParameters.benchmarks(suite);
+        Item5_PreferDependencyInjectionToHardwiringResources.benchmarks(suite);
+        Item6_AvoidCreatingUnnecessaryObjects.benchmarks(suite);
+        Item7_EliminateObsoleteObjectReferences.benchmarks(suite);
+        Item8_AvoidFinalizersAndCleaners.benchmarks(suite);
+        Item9_PreferTryWithResourcesToTryFinally.benchmarks(suite);
+        suite.run(args);
+    }
+}
@@ -1,8 +1,17 @@
 package chapter02.creating.and.destroying.objects;
 
+import benchmarks.BackgroundLoad;
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.UnaryOperator;
 
 /**
  * A class can provide a public static factory method, which is simply a static method that returns an instance of the class
@@ -46,6 +55,56 @@ public class Item1_ConsiderStaticFactoryMethodsInsteadOfConstructors implements
         helloService.execute();
     }
 
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter02Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        String[] names = new String[64];
+        Map<String, Service> initial = new HashMap<>();
+        for (int i = 0; i < names.length; i++) {
+            names[i] = "service-" + i;
+            initial.put(names[i], new HelloService());
+        }
+        ServiceProvider.registerServices(initial);
+        int mask = names.length - 1;
+
+        // reads while writers keep registering and removing their own names
+        BackgroundLoad.Step churn = (t, i) -> {
+            String name = "churn-" + t + "-" + (i & 63);
+            if ((i & 64) == 0)
+                ServiceProvider.registerService(name, new HelloService());
+            else
+                ServiceProvider.unregisterService(name);
+        };
+        BackgroundLoad.Step batchChurn = (t, i) -> {
+            Map<String, Service> batch = new HashMap<>();
+            for (int k = 0; k < 16; k++)
+                batch.put("batch-" + t + "-" + k, new HelloService());
+            ServiceProvider.registerServices(batch);
+        };
+
+        int[] r = {0};
+        suite.add("Item1.ServiceProvider.getService", bh -> bh.consume(ServiceProvider.getService(names[r[0]++ & mask])));
+        int[] c = {0};
+        suite.add("Item1.ServiceProvider.getService[churn]", 1, () -> BackgroundLoad.start("registerService", 2, churn),
+                bh -> bh.consume(ServiceProvider.getService(names[c[0]++ & mask])));
+        int[] b = {0};
+        suite.add("Item1.ServiceProvider.getService[batchChurn]", 1, () -> BackgroundLoad.start("registerServices", 2, batchChurn),
+                bh -> bh.consume(ServiceProvider.getService(names[b[0]++ & mask])));
+
+        // reference point: a concurrent map pays for thread safety on the read path as well
+        Map<String, Service> chm = new ConcurrentHashMap<>(initial);
+        int[] h = {0};
+        suite.add("Item1.ConcurrentHashMap.get[churn]", 1,
+                () -> BackgroundLoad.start("ConcurrentHashMap.put", 2, (t, i) -> {
+                    String name = "churn-" + t + "-" + (i & 63);
+                    if ((i & 64) == 0)
+                        chm.put(name, new HelloService());
+                    else
+                        chm.remove(name);
+                }),
+                bh -> bh.consume(chm.get(names[h[0]++ & mask])));
+    }
 }
 interface Service {
     void execute();
@@ -58,15 +117,93 @@ class HelloService implements Service {
         System.out.println("hello service");
     }
 }
+/**
+ * Services are held in an immutable snapshot that is replaced wholesale on every registration (copy-on-write),
+ * so {@link #getService} is a single volatile read plus a map lookup, never takes a lock, and is safe
+ * while other threads register. Writers race with a compare-and-set and retry.
+ *
+ * Providers declared through {@link ServiceLoader} are only discovered on the first lookup that misses the
+ * registered services, and a discovered provider is only instantiated when its name is first asked for.
+ */
 class ServiceProvider {
-    private static final HashMap<String, Service> services = new HashMap<>();
+    private static final AtomicReference<Map<String, Service>> services = new AtomicReference<>(Map.of());
 
     public static void registerService(String name, Service service) {
-        services.put(name, service);
+        Objects.requireNonNull(name);
+        Objects.requireNonNull(service);
+        update(current -> {
+            Map<String, Service> next = new HashMap<>(current);
+            next.put(name, service);
+            return next;
+        });
+    }
+
+    /**
+     * Registers all the given services as one atomic snapshot swap: readers see either none or all of them.
+     */
+    public static void registerServices(Map<String, ? extends Service> batch) {
+        Map<String, Service> copy = Map.copyOf(batch);
+        update(current -> {
+            Map<String, Service> next = new HashMap<>(current);
+            next.putAll(copy);
+            return next;
+        });
+    }
+
+    public static void unregisterService(String name) {
+        update(current -> {
+            if (!current.containsKey(name))
+                return current;
+            Map<String, Service> next = new HashMap<>(current);
+            next.remove(name);
+            return next;
+        });
     }
 
     public static Service getService(String name) {
-        return services.get(name);
+        Service service = services.get().get(name);
+        if (service != null)
+            return service;
+        ServiceLoader.Provider<Service> provider = Discovered.PROVIDERS.get(name);
+        if (provider == null)
+            return null;
+        Service created = provider.get();
+        // another thread may have registered or created the same name in the meantime; the snapshot wins
+        Map<String, Service> published = update(current -> {
+            if (current.containsKey(name))
+                return current;
+            Map<String, Service> next = new HashMap<>(current);
+            next.put(name, created);
+            return next;
+        });
+        return published.get(name);
+    }
+
+    private static Map<String, Service> update(UnaryOperator<Map<String, Service>> change) {
+        while (true) {
+            Map<String, Service> current = services.get();
+            Map<String, Service> next = change.apply(current);
+            if (next == current)
+                return current;
+            Map<String, Service> frozen = Collections.unmodifiableMap(next);
+            if (services.compareAndSet(current, frozen))
+                return frozen;
+        }
+    }
+
+    // lazy holder: the class, and with it the ServiceLoader scan, is only initialized on the first miss
+    private static class Discovered {
+        static final Map<String, ServiceLoader.Provider<Service>> PROVIDERS = discover();
+
+        private static Map<String, ServiceLoader.Provider<Service>> discover() {
+            Map<String, ServiceLoader.Provider<Service>> index = new HashMap<>();
+            // stream() exposes provider types without instantiating them
+            ServiceLoader.load(Service.class).stream().forEach(p -> {
+                index.putIfAbsent(p.type().getName(), p);
+                index.putIfAbsent(p.type().getSimpleName(), p);
+            });
+            return Map.copyOf(index);
+        }
     }
 }
 
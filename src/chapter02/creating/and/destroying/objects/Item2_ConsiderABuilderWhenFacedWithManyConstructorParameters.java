@@ -1,9 +1,12 @@
 package chapter02.creating.and.destroying.objects;
 
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
+import java.util.Arrays;
 import java.util.EnumSet;
 import java.util.Objects;
+import java.util.Random;
 import java.util.Set;
 
 import static chapter02.creating.and.destroying.objects.Pizza.Topping.*;
@@ -20,6 +23,14 @@ public class Item2_ConsiderABuilderWhenFacedWithManyConstructorParameters implem
 
         System.out.printf("serving size: %d\n", cocaCola.getServingSize());
 
+        // the same builder can fill a columnar table without creating a NutritionFacts per product
+        NutritionFactsTable catalogue = new NutritionFactsTable();
+        NutritionFacts.Builder colaLabel = new NutritionFacts.Builder(240, 8).calories(100).sodium(35).carbohydrate(27);
+        int can = colaLabel.appendTo(catalogue);
+        int bottle = colaLabel.appendTo(catalogue);
+        System.out.printf("%d products, %d distinct label(s)\n", catalogue.size(), catalogue.distinctLabels());
+        assert catalogue.labelOf(can) == catalogue.labelOf(bottle);
+
         try {
             NutritionFacts illegal = new NutritionFacts.Builder(-1, -1).build();
 
@@ -32,12 +43,92 @@ public class Item2_ConsiderABuilderWhenFacedWithManyConstructorParameters implem
         NyPizza pizza = new NyPizza.Builder(NyPizza.Size.SMALL).addTopping(SAUSAGE).addTopping(ONION).build();
         Calzone calzone = new Calzone.Builder().addTopping(HAM).sauceInside().build();
 
+        // the same builders can produce a pizza packed into a long, without allocating it
+        long[] orders = {
+                new NyPizza.Builder(NyPizza.Size.SMALL).addTopping(SAUSAGE).addTopping(ONION).buildPacked(),
+                new Calzone.Builder().addTopping(HAM).sauceInside().buildPacked(),
+                calzone.packed()
+        };
+        assert orders[0] == pizza.packed();
+        System.out.printf("%s: %d toppings, %d with ham\n", PackedPizza.toString(orders[1]),
+                PackedPizza.countToppings(orders), PackedPizza.countWithAll(orders, PackedPizza.mask(HAM)));
+
         /*
          * In summary, the Builder pattern is a good choice when designing classes whose constructors or static factories would have more than a handful of parameters,
          * especially if many of the parameters are optional or of identical type.
          */
 
     }
+
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter02Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        // the builder costs one extra (usually scalar-replaced) object per build, telescoping costs a wrong argument order
+        suite.add("Item2.builder", bh -> bh.consume(
+                new NutritionFacts.Builder(240, 8).calories(100).sodium(35).carbohydrate(27).build()));
+        suite.add("Item2.telescopingConstructor", bh -> bh.consume(
+                new BadExampleNutritionFacts(240, 8, 100, 0, 35, 27)));
+
+        // a catalogue of 4096 products sharing 64 distinct labels, kept as objects or in the columnar table
+        int products = 1 << 12;
+        NutritionFacts.Builder[] labels = new NutritionFacts.Builder[64];
+        for (int i = 0; i < labels.length; i++)
+            labels[i] = new NutritionFacts.Builder(100 + i, 1 + i % 8).calories(10 * i).sodium(i % 5).carbohydrate(i % 30);
+        int lmask = labels.length - 1;
+        suite.add("Item2.catalogue.objects", products, bh -> {
+            NutritionFacts[] catalogue = new NutritionFacts[products];
+            for (int i = 0; i < products; i++)
+                catalogue[i] = labels[(i * 7) & lmask].build();
+            bh.consume(catalogue);
+        });
+        suite.add("Item2.catalogue.table", products, bh -> {
+            NutritionFactsTable catalogue = new NutritionFactsTable();
+            for (int i = 0; i < products; i++)
+                labels[(i * 7) & lmask].appendTo(catalogue);
+            bh.consume(catalogue);
+        });
+
+        // building a pizza, then counting and filtering a batch of orders as objects or as packed longs
+        NyPizza.Builder nyBuilder = new NyPizza.Builder(NyPizza.Size.LARGE).addTopping(Pizza.Topping.HAM).addTopping(Pizza.Topping.ONION);
+        suite.add("Item2.pizza.build", bh -> bh.consume(nyBuilder.build()));
+        suite.add("Item2.pizza.buildPacked", bh -> bh.consume(nyBuilder.buildPacked()));
+
+        int orderCount = 1 << 16;
+        Pizza[] pizzas = new Pizza[orderCount];
+        long[] orders = new long[orderCount];
+        Random random = new Random(42);
+        Pizza.Topping[] toppings = Pizza.Topping.values();
+        for (int i = 0; i < orderCount; i++) {
+            Pizza.Builder<?> b = random.nextInt(4) == 0 ? new Calzone.Builder() : new NyPizza.Builder(NyPizza.Size.values()[random.nextInt(3)]);
+            for (Pizza.Topping t : toppings) {
+                if (random.nextInt(3) == 0)
+                    b.addTopping(t);
+            }
+            pizzas[i] = b.build();
+            orders[i] = b.buildPacked();
+        }
+        Set<Pizza.Topping> wanted = EnumSet.of(Pizza.Topping.HAM, Pizza.Topping.PEPPER);
+        long wantedMask = PackedPizza.mask(wanted);
+        suite.add("Item2.orders.countToppings[objects]", orderCount, bh -> {
+            long count = 0;
+            for (Pizza p : pizzas)
+                count += p.toppings.size();
+            bh.consume(count);
+        });
+        suite.add("Item2.orders.countToppings[packed]", orderCount, bh -> bh.consume(PackedPizza.countToppings(orders)));
+        Pizza[] pizzaMatches = new Pizza[orderCount];
+        suite.add("Item2.orders.filter[objects]", orderCount, bh -> {
+            int n = 0;
+            for (Pizza p : pizzas) {
+                if (p.toppings.containsAll(wanted))
+                    pizzaMatches[n++] = p;
+            }
+            bh.consume(n);
+        });
+        long[] orderMatches = new long[orderCount];
+        suite.add("Item2.orders.filter[packed]", orderCount, bh -> bh.consume(PackedPizza.filterWithAll(orders, wantedMask, orderMatches)));
+    }
 }
 
 // Telescoping constructor pattern - does not scale well!
@@ -135,14 +226,162 @@ class NutritionFacts {
         }
 
         public NutritionFacts build() throws IllegalArgumentException {
+            validate();
+            return new NutritionFacts(this);
+        }
+
+        /**
+         * Appends the label to a table instead of building an object; the builder can be reused afterwards.
+         * @return the product's row in the table
+         */
+        public int appendTo(NutritionFactsTable table) throws IllegalArgumentException {
+            validate();
+            return table.append(servingSize, servings, calories, fat, sodium, carbohydrate);
+        }
+
+        private void validate() {
             if (servings <= 0 || servingSize <= 0) {
                 throw new IllegalArgumentException("Invalid servings or serving size");
             }
-            return new NutritionFacts(this);
         }
     }
 }
 
+/**
+ * A catalogue of nutrition labels stored column-wise: each field lives in its own primitive array, so a label costs
+ * six ints rather than an object. Identical labels are stored once (hash-consing): every product is just an int
+ * reference to its distinct label, found through an open-addressed index over the label columns.
+ */
+final class NutritionFactsTable {
+    private static final int SERVING_SIZE = 0, SERVINGS = 1, CALORIES = 2, FAT = 3, SODIUM = 4, CARBOHYDRATE = 5, FIELDS = 6;
+
+    // distinct labels, one column per field
+    private final int[][] columns = new int[FIELDS][16];
+    private int labels;
+    // label id + 1 per slot, 0 marks an empty slot
+    private int[] index = new int[32];
+    // the label of each product
+    private int[] products = new int[16];
+    private int size;
+
+    /**
+     * @return the product's row
+     */
+    int append(int servingSize, int servings, int calories, int fat, int sodium, int carbohydrate) {
+        int label = intern(servingSize, servings, calories, fat, sodium, carbohydrate);
+        if (size == products.length)
+            products = Arrays.copyOf(products, size * 2);
+        products[size] = label;
+        return size++;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int distinctLabels() {
+        return labels;
+    }
+
+    /**
+     * Products with the same label id have identical labels.
+     */
+    public int labelOf(int product) {
+        return products[Objects.checkIndex(product, size)];
+    }
+
+    public int servingSize(int product) {
+        return columns[SERVING_SIZE][labelOf(product)];
+    }
+
+    public int servings(int product) {
+        return columns[SERVINGS][labelOf(product)];
+    }
+
+    public int calories(int product) {
+        return columns[CALORIES][labelOf(product)];
+    }
+
+    public int fat(int product) {
+        return columns[FAT][labelOf(product)];
+    }
+
+    public int sodium(int product) {
+        return columns[SODIUM][labelOf(product)];
+    }
+
+    public int carbohydrate(int product) {
+        return columns[CARBOHYDRATE][labelOf(product)];
+    }
+
+    /**
+     * Materializes a product as an object, for callers that need one.
+     */
+    public NutritionFacts get(int product) {
+        int label = labelOf(product);
+        return new NutritionFacts.Builder(columns[SERVING_SIZE][label], columns[SERVINGS][label])
+                .calories(columns[CALORIES][label])
+                .fat(columns[FAT][label])
+                .sodium(columns[SODIUM][label])
+                .carbohydrate(columns[CARBOHYDRATE][label])
+                .build();
+    }
+
+    private int intern(int servingSize, int servings, int calories, int fat, int sodium, int carbohydrate) {
+        int mask = index.length - 1;
+        int h = hash(servingSize, servings, calories, fat, sodium, carbohydrate);
+        for (int i = h & mask; ; i = (i + 1) & mask) {
+            int label = index[i] - 1;
+            if (label < 0) {
+                label = addLabel(servingSize, servings, calories, fat, sodium, carbohydrate);
+                index[i] = label + 1;
+                if (labels * 2 > index.length)
+                    rehash();
+                return label;
+            }
+            if (columns[SERVING_SIZE][label] == servingSize && columns[SERVINGS][label] == servings
+                    && columns[CALORIES][label] == calories && columns[FAT][label] == fat
+                    && columns[SODIUM][label] == sodium && columns[CARBOHYDRATE][label] == carbohydrate)
+                return label;
+        }
+    }
+
+    private int addLabel(int servingSize, int servings, int calories, int fat, int sodium, int carbohydrate) {
+        if (labels == columns[0].length) {
+            for (int f = 0; f < FIELDS; f++)
+                columns[f] = Arrays.copyOf(columns[f], labels * 2);
+        }
+        columns[SERVING_SIZE][labels] = servingSize;
+        columns[SERVINGS][labels] = servings;
+        columns[CALORIES][labels] = calories;
+        columns[FAT][labels] = fat;
+        columns[SODIUM][labels] = sodium;
+        columns[CARBOHYDRATE][labels] = carbohydrate;
+        return labels++;
+    }
+
+    private void rehash() {
+        index = new int[index.length * 2];
+        int mask = index.length - 1;
+        for (int label = 0; label < labels; label++) {
+            int i = hash(columns[SERVING_SIZE][label], columns[SERVINGS][label], columns[CALORIES][label],
+                    columns[FAT][label], columns[SODIUM][label], columns[CARBOHYDRATE][label]) & mask;
+            while (index[i] != 0)
+                i = (i + 1) & mask;
+            index[i] = label + 1;
+        }
+    }
+
+    private static int hash(int servingSize, int servings, int calories, int fat, int sodium, int carbohydrate) {
+        int h = 31 * servingSize + servings;
+        h = 31 * h + calories;
+        h = 31 * h + fat;
+        h = 31 * h + sodium;
+        h = 31 * h + carbohydrate;
+        return h * 0x9E3779B9 ^ (h >>> 16);
+    }
+}
+
 abstract class Pizza {
     public enum Topping {HAM, MUSHROOM, ONION, PEPPER, SAUSAGE}
 
@@ -150,14 +389,22 @@ abstract class Pizza {
 
     abstract static class Builder<T extends Builder<T>> {
         EnumSet<Topping> toppings = EnumSet.noneOf(Topping.class);
+        // mirrors toppings, so that buildPacked() does not have to walk the set
+        long toppingBits;
 
         public T addTopping(Topping topping) {
             toppings.add(Objects.requireNonNull(topping));
+            toppingBits |= PackedPizza.bit(topping);
             return self();
         }
 
         abstract Pizza build();
 
+        /**
+         * Builds the pizza in its {@link PackedPizza} encoding, without allocating.
+         */
+        abstract long buildPacked();
+
         // Subclasses must override this method to return "this"
         protected abstract T self();
     }
@@ -165,6 +412,11 @@ abstract class Pizza {
     Pizza(Builder<?> builder) {
         toppings = builder.toppings.clone(); // See Item 50
     }
+
+    /**
+     * @return this pizza in its {@link PackedPizza} encoding
+     */
+    abstract long packed();
 }
 
 class NyPizza extends Pizza {
@@ -184,6 +436,11 @@ class NyPizza extends Pizza {
             return new NyPizza(this);
         }
 
+        @Override
+        long buildPacked() {
+            return PackedPizza.nyPizza(toppingBits, size);
+        }
+
         @Override
         protected Builder self() {
             return this;
@@ -194,6 +451,11 @@ class NyPizza extends Pizza {
         super(builder);
         size = builder.size;
     }
+
+    @Override
+    long packed() {
+        return PackedPizza.nyPizza(PackedPizza.mask(toppings), size);
+    }
 }
 
 class Calzone extends Pizza {
@@ -212,6 +474,11 @@ class Calzone extends Pizza {
             return new Calzone(this);
         }
 
+        @Override
+        long buildPacked() {
+            return PackedPizza.calzone(toppingBits, sauceInside);
+        }
+
         @Override
         protected Builder self() {
             return this;
@@ -222,4 +489,161 @@ class Calzone extends Pizza {
         super(builder);
         sauceInside = builder.sauceInside;
     }
-}
\ No newline at end of file
+
+    @Override
+    long packed() {
+        return PackedPizza.calzone(PackedPizza.mask(toppings), sauceInside);
+    }
+}
+
+/**
+ * A pizza packed into a single long, so that a batch of orders is a {@code long[]} rather than an array of objects
+ * each holding its own EnumSet.
+ *
+ * Layout: bits 0-15 hold one bit per {@link Pizza.Topping} ordinal, bits 16-17 the {@link NyPizza.Size} ordinal,
+ * bit 18 whether the pizza is a calzone and bit 19 whether the calzone has its sauce inside.
+ */
+final class PackedPizza {
+    static final long TOPPINGS = 0xFFFFL;
+    private static final int SIZE_SHIFT = 16;
+    private static final long CALZONE = 1L << 18;
+    private static final long SAUCE_INSIDE = 1L << 19;
+
+    private static final Pizza.Topping[] ALL_TOPPINGS = Pizza.Topping.values();
+    private static final NyPizza.Size[] ALL_SIZES = NyPizza.Size.values();
+
+    // fail when the class loads, rather than let a new topping or size silently spill into the next field
+    static {
+        if (ALL_TOPPINGS.length > SIZE_SHIFT)
+            throw new AssertionError(ALL_TOPPINGS.length + " toppings do not fit in the " + SIZE_SHIFT + " topping bits");
+        if (ALL_SIZES.length > 4)
+            throw new AssertionError(ALL_SIZES.length + " sizes do not fit in the 2 size bits");
+    }
+
+    private PackedPizza() {
+    }
+
+    static long bit(Pizza.Topping topping) {
+        return 1L << topping.ordinal();
+    }
+
+    static long mask(Pizza.Topping... toppings) {
+        long mask = 0;
+        for (Pizza.Topping t : toppings)
+            mask |= bit(t);
+        return mask;
+    }
+
+    static long mask(Set<Pizza.Topping> toppings) {
+        long mask = 0;
+        for (Pizza.Topping t : toppings)
+            mask |= bit(t);
+        return mask;
+    }
+
+    static long nyPizza(long toppings, NyPizza.Size size) {
+        return (toppings & TOPPINGS) | (long) size.ordinal() << SIZE_SHIFT;
+    }
+
+    static long calzone(long toppings, boolean sauceInside) {
+        return (toppings & TOPPINGS) | CALZONE | (sauceInside ? SAUCE_INSIDE : 0);
+    }
+
+    static boolean isCalzone(long pizza) {
+        return (pizza & CALZONE) != 0;
+    }
+
+    static boolean sauceInside(long pizza) {
+        return (pizza & SAUCE_INSIDE) != 0;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the pizza is a calzone, which has no size
+     */
+    static NyPizza.Size size(long pizza) {
+        if (isCalzone(pizza))
+            throw new IllegalArgumentException("A calzone has no size");
+        return ALL_SIZES[(int) (pizza >>> SIZE_SHIFT) & 3];
+    }
+
+    static boolean hasTopping(long pizza, Pizza.Topping topping) {
+        return (pizza & bit(topping)) != 0;
+    }
+
+    static EnumSet<Pizza.Topping> toppings(long pizza) {
+        EnumSet<Pizza.Topping> toppings = EnumSet.noneOf(Pizza.Topping.class);
+        for (long bits = pizza & TOPPINGS; bits != 0; bits &= bits - 1)
+            toppings.add(ALL_TOPPINGS[Long.numberOfTrailingZeros(bits)]);
+        return toppings;
+    }
+
+    /**
+     * Decodes a packed pizza back into its object form.
+     */
+    static Pizza toPizza(long pizza) {
+        Pizza.Builder<?> builder;
+        if (isCalzone(pizza)) {
+            Calzone.Builder calzone = new Calzone.Builder();
+            builder = sauceInside(pizza) ? calzone.sauceInside() : calzone;
+        } else {
+            builder = new NyPizza.Builder(size(pizza));
+        }
+        for (Pizza.Topping t : toppings(pizza))
+            builder.addTopping(t);
+        return builder.build();
+    }
+
+    static String toString(long pizza) {
+        return (isCalzone(pizza) ? (sauceInside(pizza) ? "Calzone(sauce inside)" : "Calzone")
+                : "NyPizza(" + size(pizza) + ")") + toppings(pizza);
+    }
+
+    // Bulk operations over a batch of orders
+
+    /**
+     * @return the number of toppings over all the orders
+     */
+    static long countToppings(long[] orders) {
+        long count = 0;
+        for (long order : orders)
+            count += Long.bitCount(order & TOPPINGS);
+        return count;
+    }
+
+    /**
+     * @return how many orders have each topping, indexed by ordinal
+     */
+    static int[] toppingHistogram(long[] orders) {
+        int[] histogram = new int[ALL_TOPPINGS.length];
+        for (long order : orders) {
+            for (long bits = order & TOPPINGS; bits != 0; bits &= bits - 1)
+                histogram[Long.numberOfTrailingZeros(bits)]++;
+        }
+        return histogram;
+    }
+
+    /**
+     * @return the number of orders having all the toppings in the mask
+     */
+    static int countWithAll(long[] orders, long mask) {
+        mask &= TOPPINGS;
+        int count = 0;
+        for (long order : orders)
+            count += (order & mask) == mask ? 1 : 0;
+        return count;
+    }
+
+    /**
+     * Copies the orders having all the toppings in the mask to the front of dst, keeping their order.
+     * @return the number of orders copied
+     */
+    static int filterWithAll(long[] orders, long mask, long[] dst) {
+        mask &= TOPPINGS;
+        int n = 0;
+        for (long order : orders) {
+            dst[n] = order;
+            n += (order & mask) == mask ? 1 : 0;
+        }
+        return n;
+    }
+}
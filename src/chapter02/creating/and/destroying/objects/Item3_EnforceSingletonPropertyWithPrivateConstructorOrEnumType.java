@@ -8,6 +8,12 @@ public class Item3_EnforceSingletonPropertyWithPrivateConstructorOrEnumType impl
         SingletonClass.INSTANCE.doSomething();
 
         SingletonEnum.INSTANCE.doAThing();
+
+        // both of the above are created as soon as their class is initialized; these two wait for the first getInstance()
+        LazyHolderSingleton.describe();
+        LazyHolderSingleton.getInstance().doSomething();
+        OnDemandSingleton.getInstance().doSomething();
+        // SingletonStartupBenchmark compares the startup cost of the four over a large graph of singletons
     }
 }
 
@@ -30,4 +36,57 @@ enum SingletonEnum {
     public void doAThing() {
         System.out.println("a thing done");
     }
-}
\ No newline at end of file
+}
+
+/*
+ * Lazy initialization holder class idiom: Holder is not initialized until getInstance() reads its field,
+ * so touching the outer class (e.g. describe()) does not create the instance. No synchronization is needed,
+ * the JVM initializes a class at most once.
+ */
+class LazyHolderSingleton {
+    private LazyHolderSingleton() {
+    }
+
+    private static class Holder {
+        static final LazyHolderSingleton INSTANCE = new LazyHolderSingleton();
+    }
+
+    public static LazyHolderSingleton getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    public static String describe() {
+        return "lazy holder singleton";
+    }
+
+    public void doSomething() {
+        System.out.println("something done lazily");
+    }
+}
+
+/*
+ * Double-check idiom: created by the first getInstance(), reads after that cost one volatile read.
+ * Unlike the holder idiom it can also be reset or created with runtime arguments, at the cost of the locking code.
+ */
+class OnDemandSingleton {
+    private static volatile OnDemandSingleton instance;
+
+    private OnDemandSingleton() {
+    }
+
+    public static OnDemandSingleton getInstance() {
+        OnDemandSingleton result = instance;
+        if (result == null) {
+            synchronized (OnDemandSingleton.class) {
+                result = instance;
+                if (result == null)
+                    instance = result = new OnDemandSingleton();
+            }
+        }
+        return result;
+    }
+
+    public void doSomething() {
+        System.out.println("something done on demand");
+    }
+}
@@ -1,15 +1,56 @@
 package chapter02.creating.and.destroying.objects;
 
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
 import java.util.function.Supplier;
+import java.util.regex.Pattern;
 
 public class Item5_PreferDependencyInjectionToHardwiringResources implements ILesson {
     @Override
     public void doLesson() {
         new SpellChecker(new InjectedLexicon());
 
+        // the same SpellChecker, given a real dictionary: built once, then memory-mapped whenever it is needed
+        try {
+            Path file = Files.createTempFile("lexicon", ".lex");
+            try {
+                MappedLexicon.write(List.of("injection", "inject", "injected", "dependency", "résumé"), file);
+                SpellChecker checker = new SpellChecker(MappedLexicon.open(file));
+                System.out.println(checker.isCorrect("injected") + " " + checker.isCorrect("résumé") + " " + checker.isCorrect("injec"));
+            } finally {
+                Files.delete(file);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
         /*
          * The Supplier Interface is a part of the java.util.function package which has been introduced since Java 8,
          * to implement functional programming in Java. It represents a function which does not take in any argument but produces a value of type T.
@@ -19,15 +60,95 @@ public class Item5_PreferDependencyInjectionToHardwiringResources implements ILe
 
         String resource = exampleResourceF.create();
         System.out.println(resource);
+
+        // a factory that is expensive to call can be wrapped, without the class it is injected into knowing
+        ResourceFactoryExample<Pattern> patterns = new ResourceFactoryExample<>(
+                MemoizingSuppliers.memoize(() -> Pattern.compile("^(?=.)M*(C[MD]|D?C{0,3})(X[CL]|L?X{0,3})(I[XV]|V?I{0,3})$")));
+        assert patterns.create() == patterns.create();
+        ResourceFactoryExample<StringBuilder> buffers = new ResourceFactoryExample<>(
+                MemoizingSuppliers.perThread(StringBuilder::new)); // StringBuilder is not thread-safe
+        System.out.println(patterns.create().matcher("MCMLXXVI").matches() + " " + buffers.create().append("per thread"));
+    }
+
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter02Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        // a factory that compiles a pattern on each call, injected raw or wrapped
+        Supplier<Pattern> compile = () -> Pattern.compile("^(?=.)M*(C[MD]|D?C{0,3})(X[CL]|L?X{0,3})(I[XV]|V?I{0,3})$");
+        ResourceFactoryExample<Pattern> raw = new ResourceFactoryExample<>(compile);
+        ResourceFactoryExample<Pattern> once = new ResourceFactoryExample<>(MemoizingSuppliers.memoize(compile));
+        ResourceFactoryExample<Pattern> expiring = new ResourceFactoryExample<>(MemoizingSuppliers.expiring(compile, Duration.ofMillis(100)));
+        ResourceFactoryExample<Pattern> perThread = new ResourceFactoryExample<>(MemoizingSuppliers.perThread(compile));
+        suite.add("Item5.create.raw", bh -> bh.consume(raw.create()));
+        suite.add("Item5.create.memoize", bh -> bh.consume(once.create()));
+        suite.add("Item5.create.expiring[100ms]", bh -> bh.consume(expiring.create()));
+        suite.add("Item5.create.perThread", bh -> bh.consume(perThread.create()));
+
+        // a million generated words, half of the queries misspelled; built only when one of these is selected
+        int wordCount = 1_000_000;
+        String[] queries = new String[1 << 12];
+        Set<String>[] hashSet = newSetHolder();
+        MappedLexicon[] lexicon = new MappedLexicon[1];
+        int qmask = queries.length - 1;
+        int[] q = {0, 0};
+        suite.add("Item5.contains.HashSet", 1, () -> {
+            hashSet[0] = new HashSet<>(lexiconWords(wordCount, queries));
+            return () -> hashSet[0] = null;
+        }, bh -> bh.consume(hashSet[0].contains(queries[q[0]++ & qmask])));
+        suite.add("Item5.contains.MappedLexicon", 1, () -> {
+            Path file = Files.createTempFile("lexicon", ".lex");
+            long start = System.nanoTime();
+            MappedLexicon.write(lexiconWords(wordCount, queries), file);
+            long built = System.nanoTime();
+            lexicon[0] = MappedLexicon.open(file);
+            System.out.printf("    %d words: built in %d ms, %d KiB on disk, opened in %d us%n", lexicon[0].size(),
+                    (built - start) / 1_000_000, Files.size(file) / 1024, (System.nanoTime() - built) / 1_000);
+            return () -> {
+                lexicon[0] = null;
+                Files.delete(file);
+            };
+        }, bh -> bh.consume(lexicon[0].contains(queries[q[1]++ & qmask])));
+    }
+
+    // pseudo-words made of random syllables; fills queries with words from the list, every other one misspelled
+    private static List<String> lexiconWords(int n, String[] queries) {
+        String[] syllables = {"an", "ber", "cal", "do", "en", "fra", "gi", "hol", "in", "jo", "ka", "lu", "mer", "no",
+                "or", "pa", "qui", "ro", "sta", "te", "un", "ve", "wen", "xi", "yo", "zu", "ing", "tion", "ly", "ness"};
+        Random random = new Random(42);
+        List<String> words = new ArrayList<>(n);
+        StringBuilder word = new StringBuilder();
+        for (int i = 0; i < n; i++) {
+            word.setLength(0);
+            for (int k = 1 + random.nextInt(4); k >= 0; k--)
+                word.append(syllables[random.nextInt(syllables.length)]);
+            words.add(word.toString());
+        }
+        for (int i = 0; i < queries.length; i++) {
+            String w = words.get(random.nextInt(n));
+            queries[i] = i % 2 == 0 ? w : w.substring(1) + "q";
+        }
+        return words;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Set<String>[] newSetHolder() {
+        return (Set<String>[]) new Set<?>[1];
     }
 }
 
 class InjectedLexicon implements Lexicon {
+    private final Set<String> words = Set.of("i", "am", "injected");
 
     @Override
     public void doLexiconThing() {
         System.out.println("I am injected");
     }
+
+    @Override
+    public boolean contains(CharSequence word) {
+        return words.contains(word.toString());
+    }
 }
 
 // Dependency injection provides flexibility and testability
@@ -39,10 +160,255 @@ class SpellChecker {
         dictionary.doLexiconThing();
     }
 
+    public boolean isCorrect(CharSequence word) {
+        return dictionary.contains(word);
+    }
 }
 
 interface Lexicon {
     void doLexiconThing();
+
+    boolean contains(CharSequence word);
+}
+
+/**
+ * A read-only lexicon stored as a minimal acyclic automaton (a DAWG) over the UTF-8 bytes of its words, memory-mapped
+ * from a file written once by {@link #write}. Opening maps the file and checks its header, so even millions of words
+ * load at once and stay off the heap; words sharing a prefix share its path, words sharing a suffix share the nodes
+ * after it. {@link #contains} walks the mapped bytes directly and allocates nothing.
+ *
+ * File: a header of magic, version, word count, root offset and file length (5 ints), then the nodes. A node is a
+ * short holding (children << 1 | final), the children's labels in ascending unsigned order, then their absolute
+ * offsets as ints; a node is always written after its children. Files are limited to 2 GB.
+ */
+final class MappedLexicon implements Lexicon {
+    private static final int MAGIC = 0x4C455831; // "LEX1"
+    private static final int VERSION = 1;
+    private static final int HEADER = 20;
+    // below this many children a linear scan beats a binary search
+    private static final int LINEAR_SCAN = 8;
+
+    private final Path file;
+    private final ByteBuffer nodes;
+    private final int words;
+    private final int root;
+
+    private MappedLexicon(Path file, ByteBuffer nodes, int words, int root) {
+        this.file = file;
+        this.nodes = nodes;
+        this.words = words;
+        this.root = root;
+    }
+
+    static MappedLexicon open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER || size > Integer.MAX_VALUE)
+                throw new IOException("Not a lexicon file: " + file);
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(16) != size)
+                throw new IOException("Not a lexicon file, or a truncated one: " + file);
+            int root = buffer.getInt(12);
+            if (root < HEADER || root >= size)
+                throw new IOException("Corrupt lexicon file: " + file);
+            return new MappedLexicon(file, buffer, buffer.getInt(8), root);
+        }
+    }
+
+    /**
+     * Builds the automaton for the words, in any order and with duplicates, and writes it to the file.
+     * @return the number of distinct words written
+     */
+    static int write(Collection<? extends CharSequence> words, Path file) throws IOException {
+        byte[][] sorted = words.stream()
+                .map(w -> w.toString().getBytes(StandardCharsets.UTF_8))
+                .sorted(Arrays::compareUnsigned)
+                .toArray(byte[][]::new);
+        Builder builder = new Builder();
+        byte[] previous = null;
+        for (byte[] word : sorted) {
+            if (previous == null || !Arrays.equals(previous, word))
+                builder.add(word);
+            previous = word;
+        }
+        builder.finish();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER)
+                    .putInt(MAGIC).putInt(VERSION).putInt(builder.words).putInt(builder.root)
+                    .putInt(HEADER + builder.out.size());
+            header.flip();
+            while (header.hasRemaining())
+                channel.write(header);
+            ByteBuffer body = ByteBuffer.wrap(builder.out.toByteArray());
+            while (body.hasRemaining())
+                channel.write(body);
+        }
+        return builder.words;
+    }
+
+    @Override
+    public void doLexiconThing() {
+        System.out.printf("%d words mapped from %s%n", words, file);
+    }
+
+    /**
+     * @return false for words that are not in the lexicon, including any with an unpaired surrogate
+     */
+    @Override
+    public boolean contains(CharSequence word) {
+        int node = root;
+        for (int i = 0, n = word.length(); i < n; i++) {
+            char c = word.charAt(i);
+            if (c < 0x80) {
+                node = child(node, c);
+            } else if (c < 0x800) {
+                node = child(node, 0xC0 | c >> 6);
+                node = child(node, 0x80 | c & 0x3F);
+            } else if (!Character.isSurrogate(c)) {
+                node = child(node, 0xE0 | c >> 12);
+                node = child(node, 0x80 | c >> 6 & 0x3F);
+                node = child(node, 0x80 | c & 0x3F);
+            } else {
+                if (!Character.isHighSurrogate(c) || i + 1 == n || !Character.isLowSurrogate(word.charAt(i + 1)))
+                    return false;
+                int cp = Character.toCodePoint(c, word.charAt(++i));
+                node = child(node, 0xF0 | cp >> 18);
+                node = child(node, 0x80 | cp >> 12 & 0x3F);
+                node = child(node, 0x80 | cp >> 6 & 0x3F);
+                node = child(node, 0x80 | cp & 0x3F);
+            }
+            if (node < 0)
+                return false;
+        }
+        return (nodes.getShort(node) & 1) != 0;
+    }
+
+    int size() {
+        return words;
+    }
+
+    /**
+     * @return the offset of the child reached by the label, or -1 if there is none (also when node is already -1)
+     */
+    private int child(int node, int label) {
+        if (node < 0)
+            return -1;
+        int count = (nodes.getShort(node) & 0xFFFF) >>> 1;
+        int labels = node + 2;
+        int index = -1;
+        if (count < LINEAR_SCAN) {
+            for (int i = 0; i < count; i++) {
+                if ((nodes.get(labels + i) & 0xFF) == label) {
+                    index = i;
+                    break;
+                }
+            }
+        } else {
+            int lo = 0, hi = count - 1;
+            while (lo <= hi) {
+                int mid = (lo + hi) >>> 1;
+                int l = nodes.get(labels + mid) & 0xFF;
+                if (l < label) {
+                    lo = mid + 1;
+                } else if (l > label) {
+                    hi = mid - 1;
+                } else {
+                    index = mid;
+                    break;
+                }
+            }
+        }
+        return index < 0 ? -1 : nodes.getInt(labels + count + 4 * index);
+    }
+
+    /*
+     * Incremental construction from sorted words (Daciuk et al.): only the path of the last word is still open;
+     * when a word leaves it, the nodes past the shared prefix can no longer change and are written out, reusing
+     * an identical node written before if there is one.
+     */
+    private static final class Builder {
+        private final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        private final Map<ByteBuffer, Integer> written = new HashMap<>();
+        private final List<OpenNode> path = new ArrayList<>(List.of(new OpenNode()));
+        private byte[] last = new byte[0];
+        private int words;
+        private int root;
+
+        void add(byte[] word) {
+            int common = Arrays.mismatch(last, word);
+            if (common < 0)
+                common = word.length;
+            close(common);
+            for (int i = common; i < word.length; i++) {
+                OpenNode next = node(i + 1);
+                path.get(i).addChild(word[i]);
+                next.reset();
+            }
+            path.get(word.length).isFinal = true;
+            last = word;
+            words++;
+        }
+
+        void finish() {
+            close(0);
+            root = write(path.get(0));
+        }
+
+        // writes the open nodes deeper than depth, setting the offset of each in its parent
+        private void close(int depth) {
+            for (int d = last.length; d > depth; d--)
+                path.get(d - 1).setLastChild(write(path.get(d)));
+        }
+
+        private OpenNode node(int depth) {
+            if (depth == path.size())
+                path.add(new OpenNode());
+            return path.get(depth);
+        }
+
+        private int write(OpenNode node) {
+            ByteBuffer bytes = ByteBuffer.allocate(2 + 5 * node.count);
+            bytes.putShort((short) (node.count << 1 | (node.isFinal ? 1 : 0)));
+            bytes.put(node.labels, 0, node.count);
+            for (int i = 0; i < node.count; i++)
+                bytes.putInt(node.children[i]);
+            bytes.flip();
+            Integer offset = written.get(bytes);
+            if (offset == null) {
+                offset = HEADER + out.size();
+                if (offset < 0 || (long) offset + bytes.remaining() > Integer.MAX_VALUE)
+                    throw new IllegalStateException("Lexicon too large for a single file");
+                out.write(bytes.array(), 0, bytes.remaining());
+                written.put(bytes, offset);
+            }
+            return offset;
+        }
+    }
+
+    private static final class OpenNode {
+        boolean isFinal;
+        byte[] labels = new byte[4];
+        int[] children = new int[4];
+        int count;
+
+        void reset() {
+            isFinal = false;
+            count = 0;
+        }
+
+        void addChild(byte label) {
+            if (count == labels.length) {
+                labels = Arrays.copyOf(labels, count * 2);
+                children = Arrays.copyOf(children, count * 2);
+            }
+            labels[count++] = label;
+        }
+
+        void setLastChild(int offset) {
+            children[count - 1] = offset;
+        }
+    }
 }
 
 class ResourceFactoryExample<T> {
@@ -55,4 +421,133 @@ class ResourceFactoryExample<T> {
     public T create() {
         return this.fac.get();
     }
+}
+
+/**
+ * Wrappers that make a Supplier call its delegate less often, for resources that are expensive to create.
+ */
+final class MemoizingSuppliers {
+    private MemoizingSuppliers() {
+    }
+
+    /**
+     * Calls the delegate once, on the first get(); after that get() is a single volatile read. If the delegate
+     * throws, nothing is remembered and the next get() tries again. The delegate must not return null.
+     */
+    static <T> Supplier<T> memoize(Supplier<? extends T> delegate) {
+        return new Once<>(delegate);
+    }
+
+    /**
+     * Calls the delegate on the first get(), then again in the background once the value is older than the time to
+     * live: until the refresh completes get() keeps returning the previous value, so readers never wait for it.
+     * A refresh that fails keeps the previous value, and the next get() after it retries.
+     */
+    static <T> Expiring<T> expiring(Supplier<? extends T> delegate, Duration timeToLive, Executor refresher) {
+        return new Expiring<>(delegate, timeToLive.toNanos(), refresher, System::nanoTime);
+    }
+
+    static <T> Expiring<T> expiring(Supplier<? extends T> delegate, Duration timeToLive) {
+        return expiring(delegate, timeToLive, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Calls the delegate once per thread, for resources that are not thread-safe (e.g. a StringBuilder or a
+     * SimpleDateFormat). The values live as long as their thread, so prefer it for long-lived pool threads.
+     */
+    static <T> Supplier<T> perThread(Supplier<? extends T> delegate) {
+        ThreadLocal<T> values = ThreadLocal.withInitial(delegate);
+        return values::get;
+    }
+
+    private static final class Once<T> implements Supplier<T> {
+        private Supplier<? extends T> delegate;
+        private volatile T value;
+
+        Once(Supplier<? extends T> delegate) {
+            this.delegate = Objects.requireNonNull(delegate);
+        }
+
+        @Override
+        public T get() {
+            T result = value;
+            if (result == null) {
+                synchronized (this) {
+                    result = value;
+                    if (result == null) {
+                        value = result = Objects.requireNonNull(delegate.get(), "supplier returned null");
+                        delegate = null; // no longer needed, let whatever it captured be collected
+                    }
+                }
+            }
+            return result;
+        }
+    }
+
+    static final class Expiring<T> implements Supplier<T> {
+        private final Supplier<? extends T> delegate;
+        private final long timeToLiveNanos;
+        private final Executor refresher;
+        private final LongSupplier ticker;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+        private final LongAdder refreshes = new LongAdder();
+        private volatile Loaded<T> loaded;
+
+        // the ticker is the source of time in nanoseconds that the time to live is measured against; the factories pass System::nanoTime
+        Expiring(Supplier<? extends T> delegate, long timeToLiveNanos, Executor refresher, LongSupplier ticker) {
+            if (timeToLiveNanos <= 0)
+                throw new IllegalArgumentException("time to live must be positive");
+            this.delegate = Objects.requireNonNull(delegate);
+            this.timeToLiveNanos = timeToLiveNanos;
+            this.refresher = Objects.requireNonNull(refresher);
+            this.ticker = Objects.requireNonNull(ticker);
+        }
+
+        @Override
+        public T get() {
+            Loaded<T> current = loaded;
+            if (current == null)
+                return loadFirst();
+            if (ticker.getAsLong() - current.loadedAt >= timeToLiveNanos && refreshing.compareAndSet(false, true)) {
+                try {
+                    refresher.execute(this::refresh);
+                } catch (RejectedExecutionException e) {
+                    refreshing.set(false);
+                }
+            }
+            return current.value;
+        }
+
+        /**
+         * @return how many times the value was reloaded after the first load
+         */
+        long refreshCount() {
+            return refreshes.sum();
+        }
+
+        private synchronized T loadFirst() {
+            if (loaded == null)
+                loaded = load();
+            return loaded.value;
+        }
+
+        private void refresh() {
+            try {
+                loaded = load();
+                refreshes.increment();
+            } catch (RuntimeException e) {
+                // keep serving the previous value
+            } finally {
+                refreshing.set(false);
+            }
+        }
+
+        private Loaded<T> load() {
+            T value = Objects.requireNonNull(delegate.get(), "supplier returned null");
+            return new Loaded<>(value, ticker.getAsLong());
+        }
+
+        private record Loaded<T>(T value, long loadedAt) {
+        }
+    }
 }
\ No newline at end of file
@@ -1,8 +1,15 @@
 package chapter02.creating.and.destroying.objects;
 
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.LongStream;
+import java.util.stream.Stream;
 
 public class Item6_AvoidCreatingUnnecessaryObjects implements ILesson {
     @Override
@@ -24,6 +31,71 @@ public class Item6_AvoidCreatingUnnecessaryObjects implements ILesson {
         String numeral = "X";
         System.out.printf("%b is faster than %b\n", gp.isRomanNumeral(numeral), pp.isRomanNumeral(numeral));
 
+        // the pattern can be dropped altogether: a finite-state machine over the characters allocates nothing
+        RomanNumerals rn = new RomanNumerals();
+        System.out.printf("%b is faster still, and %s = %d\n", rn.isRomanNumeral(numeral), "MCMXCIV", RomanNumerals.parse("MCMXCIV"));
+
+        // every way of computing the sum agrees; only the boxed one creates an object per step
+        for (SubtleObjectCreation.SumVariant variant : SubtleObjectCreation.SumVariant.values()) {
+            long sum = variant.sum(1_000_000);
+            System.out.printf("%s sum = %d%n", variant, sum);
+            if (sum != 500_000_500_000L)
+                throw new IllegalStateException(variant + " computed " + sum + ", expected 500000500000");
+        }
+    }
+
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter02Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        String[] numerals = {"X", "MCMXCIV", "MMXXIII", "IIII", "CDXLIV", "hello", "MMMDCCCLXXXVIII", ""};
+        int mask = numerals.length - 1;
+
+        PoorPerformance poor = new PoorPerformance();
+        int[] p = {0};
+        suite.add("Item6.PoorPerformance.isRomanNumeral", bh -> bh.consume(poor.isRomanNumeral(numerals[p[0]++ & mask])));
+
+        GoodPerformance good = new GoodPerformance();
+        int[] g = {0};
+        suite.add("Item6.GoodPerformance.isRomanNumeral", bh -> bh.consume(good.isRomanNumeral(numerals[g[0]++ & mask])));
+
+        RomanNumerals dfa = new RomanNumerals();
+        int[] d = {0};
+        suite.add("Item6.RomanNumerals.isRomanNumeral", bh -> bh.consume(dfa.isRomanNumeral(numerals[d[0]++ & mask])));
+        int[] v = {0};
+        suite.add("Item6.RomanNumerals.parse", bh -> bh.consume(RomanNumerals.parse(numerals[v[0]++ & mask])));
+
+        // bulk validation of a batch of tokens, reported per token
+        String[] batch = new String[1 << 16];
+        for (int i = 0; i < batch.length; i++)
+            batch[i] = numerals[i & mask];
+        boolean[] valid = new boolean[batch.length];
+        suite.add("Item6.bulk.GoodPerformance", batch.length, bh -> {
+            for (int i = 0; i < batch.length; i++)
+                valid[i] = good.isRomanNumeral(batch[i]);
+            bh.consume(valid);
+        });
+        suite.add("Item6.bulk.RomanNumerals.validate", batch.length,
+                bh -> bh.consume(RomanNumerals.validate(batch, valid, false)));
+        suite.add("Item6.bulk.RomanNumerals.validate[parallel]", batch.length,
+                bh -> bh.consume(RomanNumerals.validate(batch, valid, true)));
+        int[] values = new int[batch.length];
+        suite.add("Item6.bulk.RomanNumerals.parse[parallel]", batch.length, bh -> {
+            RomanNumerals.parse(batch, values, true);
+            bh.consume(values);
+        });
+
+        // reported per loop step; the lesson's Integer.MAX_VALUE bound would make one invocation take seconds.
+        // Allocation includes the pool threads, so the parallel variants' task objects are counted; they are a few per
+        // chunk, against one Long per step for BOXED.
+        // Once compiled, escape analysis usually removes BOXED's Longs: run with -XX:-DoEscapeAnalysis to see them
+        for (long n : new long[]{1_000, 1_000_000, 100_000_000}) {
+            for (SubtleObjectCreation.SumVariant variant : SubtleObjectCreation.SumVariant.values()) {
+                if (variant == SubtleObjectCreation.SumVariant.BOXED && n > 1_000_000)
+                    continue; // seconds per invocation, and nothing new to learn
+                suite.add("Item6.sum." + variant + "[n=" + n + "]", n, bh -> bh.consume(variant.sum(n)));
+            }
+        }
     }
 }
 
@@ -56,14 +128,182 @@ class GoodPerformance implements IsRoman {
     }
 }
 
+/**
+ * Validates and parses roman numerals with a hand-built deterministic finite automaton that accepts exactly the
+ * language of {@link GoodPerformance#ROMAN}. Unlike a {@code Matcher}, walking the transition table needs no per-call
+ * state, so checking a token allocates nothing and never backtracks. Any {@link CharSequence} can be checked,
+ * which lets callers validate a slice of a larger buffer without first copying it into a String.
+ */
+class RomanNumerals implements IsRoman {
+    // character classes
+    private static final int OTHER = 0, I = 1, V = 2, X = 3, L = 4, C = 5, D = 6, M = 7, CLASSES = 8;
+    private static final byte[] CLASS_OF = new byte[128];
+
+    // states: START has read nothing, THOUSANDS has read one or more M, then 8 states per digit group, and DEAD
+    private static final int START = 0, THOUSANDS = 1, GROUP_STATES = 8, DEAD = 2 + 3 * GROUP_STATES, STATES = DEAD + 1;
+    // offsets within a group; DONE follows a subtractive pair such as IV or XC
+    private static final int U1 = 0, U2 = 1, U3 = 2, F = 3, FU1 = 4, FU2 = 5, FU3 = 6, DONE = 7;
+
+    // for hundreds, tens and ones: the unit, five and ten characters and the unit value
+    private static final int[] UNIT = {C, X, I};
+    private static final int[] FIVE = {D, L, V};
+    private static final int[] TEN = {M, C, X};
+    private static final int[] SCALE = {100, 10, 1};
+
+    private static final byte[] NEXT = new byte[STATES * CLASSES];
+    private static final short[] ADD = new short[STATES * CLASSES];
+
+    static {
+        CLASS_OF['I'] = I;
+        CLASS_OF['V'] = V;
+        CLASS_OF['X'] = X;
+        CLASS_OF['L'] = L;
+        CLASS_OF['C'] = C;
+        CLASS_OF['D'] = D;
+        CLASS_OF['M'] = M;
+
+        Arrays.fill(NEXT, (byte) DEAD);
+        for (int c = 0; c < CLASSES; c++) {
+            enter(START, 0, c);
+            enter(THOUSANDS, 0, c);
+        }
+        edge(START, M, THOUSANDS, 1000);
+        edge(THOUSANDS, M, THOUSANDS, 1000);
+
+        for (int g = 0; g < 3; g++) {
+            int base = 2 + g * GROUP_STATES, u = SCALE[g];
+            // anything that does not continue the current group may start a later one
+            for (int s = base; s < base + GROUP_STATES; s++) {
+                for (int c = 0; c < CLASSES; c++)
+                    enter(s, g + 1, c);
+            }
+            edge(base + U1, UNIT[g], base + U2, u);
+            edge(base + U2, UNIT[g], base + U3, u);
+            edge(base + U1, FIVE[g], base + DONE, 3 * u);
+            edge(base + U1, TEN[g], base + DONE, 8 * u);
+            edge(base + F, UNIT[g], base + FU1, u);
+            edge(base + FU1, UNIT[g], base + FU2, u);
+            edge(base + FU2, UNIT[g], base + FU3, u);
+        }
+    }
+
+    // from state s, character class c may open group g or any group after it
+    private static void enter(int s, int g, int c) {
+        for (int k = g; k < 3; k++) {
+            int base = 2 + k * GROUP_STATES;
+            if (c == UNIT[k]) {
+                edge(s, c, base + U1, SCALE[k]);
+                return;
+            }
+            if (c == FIVE[k]) {
+                edge(s, c, base + F, 5 * SCALE[k]);
+                return;
+            }
+        }
+        edge(s, c, DEAD, 0);
+    }
+
+    private static void edge(int from, int c, int to, int add) {
+        NEXT[from * CLASSES + c] = (byte) to;
+        ADD[from * CLASSES + c] = (short) add;
+    }
+
+    private static int classOf(char ch) {
+        return ch < 128 ? CLASS_OF[ch] : OTHER;
+    }
+
+    @Override
+    public boolean isRomanNumeral(String s) {
+        return isValid(s);
+    }
+
+    static boolean isValid(CharSequence s) {
+        int state = START;
+        for (int i = 0, n = s.length(); i < n && state != DEAD; i++)
+            state = NEXT[state * CLASSES + classOf(s.charAt(i))];
+        return state != START && state != DEAD;
+    }
+
+    /**
+     * @return the value of the numeral, or -1 if it is not a valid numeral or its value does not fit in an int
+     */
+    static int parse(CharSequence s) {
+        int state = START;
+        long value = 0;
+        for (int i = 0, n = s.length(); i < n && state != DEAD; i++) {
+            int t = state * CLASSES + classOf(s.charAt(i));
+            state = NEXT[t];
+            value += ADD[t];
+        }
+        return state == START || state == DEAD || value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+
+    /**
+     * Validates every token into {@code valid}, splitting the work across the common pool if {@code parallel}.
+     * @return the number of valid tokens
+     */
+    static int validate(CharSequence[] tokens, boolean[] valid, boolean parallel) {
+        if (valid.length < tokens.length)
+            throw new IllegalArgumentException("destination is shorter than the tokens");
+        IntStream indices = IntStream.range(0, tokens.length);
+        if (parallel)
+            indices = indices.parallel();
+        return indices.map(i -> (valid[i] = isValid(tokens[i])) ? 1 : 0).sum();
+    }
+
+    static boolean[] validate(CharSequence[] tokens, boolean parallel) {
+        boolean[] valid = new boolean[tokens.length];
+        validate(tokens, valid, parallel);
+        return valid;
+    }
+
+    /**
+     * Parses every token into {@code values}, -1 marking invalid tokens.
+     */
+    static void parse(CharSequence[] tokens, int[] values, boolean parallel) {
+        if (values.length < tokens.length)
+            throw new IllegalArgumentException("destination is shorter than the tokens");
+        if (parallel) {
+            IntStream.range(0, tokens.length).parallel().forEach(i -> values[i] = parse(tokens[i]));
+        } else {
+            for (int i = 0; i < tokens.length; i++)
+                values[i] = parse(tokens[i]);
+        }
+    }
+
+    static int[] parse(CharSequence[] tokens, boolean parallel) {
+        int[] values = new int[tokens.length];
+        parse(tokens, values, parallel);
+        return values;
+    }
+
+    /**
+     * Counts the valid tokens of a stream; the stream's own parallelism is preserved.
+     */
+    static long countValid(Stream<? extends CharSequence> tokens) {
+        return tokens.filter(RomanNumerals::isValid).count();
+    }
+
+    /**
+     * Maps a stream of tokens to their values, -1 marking invalid tokens.
+     */
+    static IntStream parse(Stream<? extends CharSequence> tokens) {
+        return tokens.mapToInt(RomanNumerals::parse);
+    }
+}
+
 class SubtleObjectCreation {
     /**
      * Another way to create unnecessary objects is autoboxing
      * @return sum
      */
     public static long sumWithUnnecessaryObjectCreation() {
+        return sumWithUnnecessaryObjectCreation(Integer.MAX_VALUE);
+    }
+
+    static long sumWithUnnecessaryObjectCreation(long n) {
         Long sum = 0L;
-        for (long i = 0; i <= Integer.MAX_VALUE; i++)
+        for (long i = 0; i <= n; i++)
             sum += i; // auto boxing
         return sum;
     }
@@ -73,9 +313,101 @@ class SubtleObjectCreation {
      * @return sum
      */
     public static long sum() {
+        return sum(Integer.MAX_VALUE);
+    }
+
+    static long sum(long n) {
         long sum = 0L;
-        for (long i = 0; i <= Integer.MAX_VALUE; i++)
+        for (long i = 0; i <= n; i++)
             sum += i;
         return sum;
     }
+
+    static long sumParallelStream(long n) {
+        return LongStream.rangeClosed(0, n).parallel().sum();
+    }
+
+    static long sumForkJoin(long n) {
+        if (n < 0)
+            return 0;
+        // a few chunks per worker, so that a slow worker can be helped out by stealing
+        long threshold = Math.max(1 << 14, n / (8L * ForkJoinPool.getCommonPoolParallelism()));
+        return ForkJoinPool.commonPool().invoke(new RangeSum(0, n, threshold));
+    }
+
+    /**
+     * 0 + 1 + ... + n = n(n + 1) / 2, halving the even factor first so that the result wraps exactly like the loops'.
+     */
+    static long sumClosedForm(long n) {
+        if (n < 0)
+            return 0;
+        return (n & 1) == 0 ? (n / 2) * (n + 1) : n * ((n + 1) / 2);
+    }
+
+    /**
+     * The ways of computing 0 + 1 + ... + n, side by side for Chapter02Benchmarks.
+     */
+    enum SumVariant {
+        SEQUENTIAL {
+            @Override
+            long sum(long n) {
+                return SubtleObjectCreation.sum(n);
+            }
+        },
+        BOXED {
+            @Override
+            long sum(long n) {
+                return sumWithUnnecessaryObjectCreation(n);
+            }
+        },
+        PARALLEL_STREAM {
+            @Override
+            long sum(long n) {
+                return sumParallelStream(n);
+            }
+        },
+        FORK_JOIN {
+            @Override
+            long sum(long n) {
+                return sumForkJoin(n);
+            }
+        },
+        CLOSED_FORM {
+            @Override
+            long sum(long n) {
+                return sumClosedForm(n);
+            }
+        };
+
+        abstract long sum(long n);
+    }
+
+    private static final class RangeSum extends RecursiveTask<Long> {
+        private static final long serialVersionUID = 1L;
+
+        private final long from;
+        private final long to; // inclusive
+        private final long threshold;
+
+        RangeSum(long from, long to, long threshold) {
+            this.from = from;
+            this.to = to;
+            this.threshold = threshold;
+        }
+
+        @Override
+        protected Long compute() {
+            if (to - from < threshold) {
+                long sum = 0L;
+                for (long i = from; i <= to; i++)
+                    sum += i;
+                return sum;
+            }
+            long mid = (from + to) >>> 1;
+            RangeSum left = new RangeSum(from, mid, threshold);
+            left.fork();
+            long right = new RangeSum(mid + 1, to, threshold).compute();
+            return left.join() + right;
+        }
+    }
 }
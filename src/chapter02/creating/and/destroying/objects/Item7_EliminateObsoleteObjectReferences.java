@@ -1,11 +1,25 @@
 package chapter02.creating.and.destroying.objects;
 
+import benchmarks.BackgroundLoad;
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.EmptyStackException;
 import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
 import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+import java.util.function.ToIntBiFunction;
 
 public class Item7_EliminateObsoleteObjectReferences implements ILesson {
     @Override
@@ -33,6 +47,86 @@ public class Item7_EliminateObsoleteObjectReferences implements ILesson {
 
 
     }
+
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter02Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        // a skewed trace: key popularity follows a Zipf distribution with exponent 0.99 over 100k keys
+        int distinct = 100_000;
+        int[] trace = zipfTrace(distinct, 0.99, 1 << 20, new Random(7));
+        String[] names = new String[distinct];
+        for (int i = 0; i < names.length; i++)
+            names[i] = "key" + i;
+        int mask = trace.length - 1;
+
+        for (int capacity : new int[]{1_000, 10_000}) {
+            BoundedCache<Key, Value>[] cache = newCacheHolder();
+            int[] c = {0};
+            suite.add("Item7.BoundedCache.get[capacity=" + capacity + "]", 1, () -> {
+                cache[0] = BoundedCache.<Key, Value>builder().maximumSize(capacity).build();
+                return () -> System.out.printf("    %s%n", cache[0]);
+            }, bh -> {
+                String name = names[trace[c[0]++ & mask]];
+                bh.consume(cache[0].get(new Key(name), k -> new Value(name)));
+            });
+        }
+
+        // the lookup key is a fresh instance, so the stored keys are only weakly reachable and every GC empties the map
+        Map<Key, Value> weak = new WeakHashMap<>();
+        long[] stats = new long[2];
+        int[] w = {0};
+        suite.add("Item7.WeakHashMap.get", 1, () -> {
+            weak.clear();
+            stats[0] = stats[1] = 0;
+            return () -> System.out.printf("    WeakHashMap[size=%d, hitRate=%.3f]%n", weak.size(), (double) stats[0] / (stats[0] + stats[1]));
+        }, bh -> {
+            String name = names[trace[w[0]++ & mask]];
+            Key key = new Key(name);
+            Value v = weak.get(key);
+            if (v != null) {
+                stats[0]++;
+            } else {
+                stats[1]++;
+                v = new Value(name);
+                weak.put(key, v);
+            }
+            bh.consume(v);
+        });
+
+        // reads on the benchmark thread while two threads replay the same trace
+        BoundedCache<Key, Value> shared = BoundedCache.<Key, Value>builder().maximumSize(10_000).build();
+        int[] s = {0};
+        suite.add("Item7.BoundedCache.get[capacity=10000, contended]", 1,
+                () -> BackgroundLoad.start("BoundedCache.get", 2, (t, i) -> {
+                    String name = names[trace[(int) (i * 7 + t) & mask]];
+                    shared.get(new Key(name), k -> new Value(name));
+                }),
+                bh -> {
+                    String name = names[trace[s[0]++ & mask]];
+                    bh.consume(shared.get(new Key(name), k -> new Value(name)));
+                });
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <K, V> BoundedCache<K, V>[] newCacheHolder() {
+        return (BoundedCache<K, V>[]) new BoundedCache<?, ?>[1];
+    }
+
+    static int[] zipfTrace(int distinct, double exponent, int length, Random random) {
+        double[] cdf = new double[distinct];
+        double total = 0;
+        for (int i = 0; i < distinct; i++) {
+            total += 1 / Math.pow(i + 1, exponent);
+            cdf[i] = total;
+        }
+        int[] trace = new int[length];
+        for (int i = 0; i < length; i++) {
+            int k = Arrays.binarySearch(cdf, random.nextDouble() * total);
+            trace[i] = Math.min(distinct - 1, k < 0 ? -k - 1 : k);
+        }
+        return trace;
+    }
 }
 
 // Can you spot the "memory leak"?
@@ -119,25 +213,508 @@ class Stack {
         // Retrieving values from the cache again
         System.out.println(cache.get(key1)); // Output: null (key1 entry was automatically removed)
         System.out.println(cache.get(key2)); // Output: value2 (key2 entry is still present)
+
+        // a WeakHashMap evicts whenever the GC runs and is unbounded until then; bound the cache by usage instead
+        BoundedCache<Key, Value> bounded = BoundedCache.<Key, Value>builder()
+                .maximumSize(2)
+                .expireAfterWrite(Duration.ofMinutes(10))
+                .build();
+        for (int i = 0; i < 5; i++)
+            bounded.get(new Key("key2"), k -> value2); // popular
+        bounded.put(new Key("key3"), new Value("value3"));
+        bounded.put(new Key("key4"), new Value("value4"));
+        System.out.println(bounded.get(new Key("key2"))); // Output: value2 (frequently used entries survive)
+        System.out.println(bounded);
     }
 }
 
 class Key {
-    private String key;
+    private final String key;
 
     public Key(String key) {
-        this.key = key;
+        this.key = Objects.requireNonNull(key);
     }
 
     // Implement equals() and hashCode() methods
     // to ensure proper behavior of WeakHashMap
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Key && ((Key) o).key.equals(key);
+    }
+
+    @Override
+    public int hashCode() {
+        return key.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return key;
+    }
 }
 
 class Value {
-    private String value;
+    private final String value;
 
     public Value(String value) {
-        this.value = value;
+        this.value = Objects.requireNonNull(value);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Value && ((Value) o).value.equals(value);
+    }
+
+    @Override
+    public int hashCode() {
+        return value.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return value;
+    }
+}
+
+/**
+ * A concurrent cache bounded by size or weight, evicting by W-TinyLFU instead of by garbage collection timing.
+ *
+ * New entries enter a small LRU window (1% of the capacity). Entries pushed out of the window compete for a place in
+ * the main space, a segmented LRU of probation and protected (80%) entries: a count-min sketch estimates how often
+ * each key was asked for recently, and the candidate only displaces the main space's victim if it is more popular.
+ * The window lets bursts of new keys in, the frequency filter keeps one-hit wonders from flushing the popular ones.
+ *
+ * Reads are lock-free: they look up a ConcurrentHashMap and only record the access in the policy if its lock is free,
+ * dropping the record otherwise (the policy is a heuristic, losing a few accesses under contention is harmless).
+ * Writes and evictions are serialized under that lock.
+ */
+final class BoundedCache<K, V> {
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ReentrantLock policyLock = new ReentrantLock();
+    private final FrequencySketch sketch;
+    private final ToIntBiFunction<? super K, ? super V> weigher;
+    private final long expireAfterWriteNanos;
+    private final LongSupplier ticker;
+
+    private final long maximum;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    // queues are doubly linked through sentinels, least recently used first; guarded by policyLock
+    private final Node<K, V> window = Node.sentinel();
+    private final Node<K, V> probation = Node.sentinel();
+    private final Node<K, V> protectedQueue = Node.sentinel();
+    private long windowWeight;
+    private long probationWeight;
+    private long protectedWeight;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private BoundedCache(Builder<K, V> builder) {
+        maximum = builder.maximum;
+        weigher = builder.weigher;
+        expireAfterWriteNanos = builder.expireAfterWriteNanos;
+        ticker = builder.ticker;
+        windowMaximum = Math.max(1, maximum / 100);
+        protectedMaximum = (maximum - windowMaximum) * 8 / 10;
+        sketch = new FrequencySketch(builder.expectedEntries);
+    }
+
+    static <K, V> Builder<K, V> builder() {
+        return new Builder<>();
+    }
+
+    static final class Builder<K, V> {
+        private long maximum = -1;
+        private int expectedEntries;
+        private ToIntBiFunction<? super K, ? super V> weigher = (k, v) -> 1;
+        private long expireAfterWriteNanos = Long.MAX_VALUE;
+        private LongSupplier ticker = System::nanoTime;
+
+        private Builder() {
+        }
+
+        public Builder<K, V> maximumSize(int size) {
+            if (size <= 0)
+                throw new IllegalArgumentException("maximum size must be positive");
+            maximum = size;
+            expectedEntries = size;
+            weigher = (k, v) -> 1;
+            return this;
+        }
+
+        /**
+         * @param expectedEntries roughly how many entries fit within the weight, used to size the frequency sketch
+         */
+        public Builder<K, V> maximumWeight(long weight, int expectedEntries, ToIntBiFunction<? super K, ? super V> weigher) {
+            if (weight <= 0 || expectedEntries <= 0)
+                throw new IllegalArgumentException("maximum weight and expected entries must be positive");
+            maximum = weight;
+            this.expectedEntries = expectedEntries;
+            this.weigher = Objects.requireNonNull(weigher);
+            return this;
+        }
+
+        public Builder<K, V> expireAfterWrite(Duration duration) {
+            if (duration.isNegative())
+                throw new IllegalArgumentException("negative expiry: " + duration);
+            expireAfterWriteNanos = duration.toNanos();
+            return this;
+        }
+
+        // the source of time in nanoseconds that expiry is measured against, System::nanoTime by default
+        Builder<K, V> ticker(LongSupplier ticker) {
+            this.ticker = Objects.requireNonNull(ticker);
+            return this;
+        }
+
+        public BoundedCache<K, V> build() {
+            if (maximum < 0)
+                throw new IllegalStateException("a maximum size or weight is required");
+            return new BoundedCache<>(this);
+        }
+    }
+
+    /**
+     * @return the cached value, or null if absent or expired
+     */
+    public V get(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null || expired(node, ticker.getAsLong())) {
+            misses.increment();
+            if (policyLock.tryLock()) {
+                try {
+                    sketch.increment(key);
+                    if (node != null && data.remove(key, node))
+                        unlink(node);
+                } finally {
+                    policyLock.unlock();
+                }
+            }
+            return null;
+        }
+        hits.increment();
+        if (policyLock.tryLock()) {
+            try {
+                sketch.increment(key);
+                if (node.queue != null)
+                    onAccess(node);
+            } finally {
+                policyLock.unlock();
+            }
+        }
+        return node.value;
+    }
+
+    /**
+     * Returns the cached value, loading and caching it on a miss. Concurrent loads of the same key may both run;
+     * the first one to be cached wins.
+     */
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value != null)
+            return value;
+        V loaded = Objects.requireNonNull(loader.apply(key));
+        return put(key, loaded, false);
+    }
+
+    public void put(K key, V value) {
+        put(key, Objects.requireNonNull(value), true);
+    }
+
+    private V put(K key, V value, boolean replace) {
+        Objects.requireNonNull(key);
+        int weight = weigher.applyAsInt(key, value);
+        if (weight < 0)
+            throw new IllegalArgumentException("negative weight: " + weight);
+        long now = ticker.getAsLong();
+        policyLock.lock();
+        try {
+            sketch.increment(key);
+            Node<K, V> node = data.get(key);
+            if (node != null && !replace && !expired(node, now))
+                return node.value;
+            if (node != null) {
+                addWeight(node.queue, weight - node.weight);
+                node.weight = weight;
+                node.value = value;
+                node.writeTime = now;
+                onAccess(node);
+            } else {
+                node = new Node<>(key, value, weight, now);
+                data.put(key, node);
+                linkLast(window, node);
+                windowWeight += weight;
+            }
+            evict();
+            return value;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public void invalidate(K key) {
+        policyLock.lock();
+        try {
+            Node<K, V> node = data.remove(key);
+            if (node != null)
+                unlink(node);
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    /**
+     * Removes every expired entry now, instead of when it is next read or reaches the end of its queue.
+     */
+    public void cleanUp() {
+        long now = ticker.getAsLong();
+        policyLock.lock();
+        try {
+            for (Node<K, V> node : data.values()) {
+                if (expired(node, now) && data.remove(node.key, node))
+                    unlink(node);
+            }
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public long weightedSize() {
+        policyLock.lock();
+        try {
+            return windowWeight + probationWeight + protectedWeight;
+        } finally {
+            policyLock.unlock();
+        }
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public double hitRate() {
+        long h = hits.sum(), total = h + misses.sum();
+        return total == 0 ? 1.0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BoundedCache[size=%d, hits=%d, misses=%d, evictions=%d, hitRate=%.3f]",
+                size(), hitCount(), missCount(), evictionCount(), hitRate());
+    }
+
+    private boolean expired(Node<K, V> node, long now) {
+        return expireAfterWriteNanos != Long.MAX_VALUE && now - node.writeTime >= expireAfterWriteNanos;
+    }
+
+    // guarded by policyLock
+    private void onAccess(Node<K, V> node) {
+        if (node.queue == window) {
+            moveToEnd(window, node);
+        } else if (node.queue == probation) {
+            // a second hit promotes to protected, which may push its least recently used entry back to probation
+            unlink(node);
+            linkLast(protectedQueue, node);
+            protectedWeight += node.weight;
+            while (protectedWeight > protectedMaximum && protectedQueue.next != protectedQueue) {
+                Node<K, V> demoted = protectedQueue.next;
+                unlink(demoted);
+                linkLast(probation, demoted);
+                probationWeight += demoted.weight;
+            }
+        } else if (node.queue == protectedQueue) {
+            moveToEnd(protectedQueue, node);
+        }
+    }
+
+    // guarded by policyLock
+    private void evict() {
+        // entries overflowing the window become candidates at the most recently used end of probation
+        Node<K, V> candidate = null;
+        while (windowWeight > windowMaximum && window.next != window) {
+            Node<K, V> n = window.next;
+            unlink(n);
+            linkLast(probation, n);
+            probationWeight += n.weight;
+            if (candidate == null)
+                candidate = n;
+        }
+
+        long now = ticker.getAsLong();
+        while (windowWeight + probationWeight + protectedWeight > maximum) {
+            Node<K, V> victim = probation.next != probation ? probation.next
+                    : protectedQueue.next != protectedQueue ? protectedQueue.next
+                    : window.next != window ? window.next : null;
+            if (victim == null)
+                return;
+            if (expired(victim, now) || candidate == null || candidate == victim || candidate.queue != probation) {
+                if (candidate == victim)
+                    candidate = null;
+                evict(victim);
+                continue;
+            }
+            // admission: the candidate only replaces the victim if it has been asked for more often
+            Node<K, V> next = candidate.next == probation ? null : candidate.next;
+            if (sketch.frequency(candidate.key) > sketch.frequency(victim.key)) {
+                evict(victim);
+            } else {
+                evict(candidate);
+                candidate = next;
+            }
+        }
+    }
+
+    private void evict(Node<K, V> node) {
+        data.remove(node.key, node);
+        unlink(node);
+        evictions.increment();
+    }
+
+    private void linkLast(Node<K, V> queue, Node<K, V> node) {
+        node.queue = queue;
+        node.prev = queue.prev;
+        node.next = queue;
+        queue.prev.next = node;
+        queue.prev = node;
+    }
+
+    private void unlink(Node<K, V> node) {
+        if (node.queue == null)
+            return;
+        addWeight(node.queue, -node.weight);
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = node.next = null;
+        node.queue = null;
+    }
+
+    private void moveToEnd(Node<K, V> queue, Node<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = queue.prev;
+        node.next = queue;
+        queue.prev.next = node;
+        queue.prev = node;
+    }
+
+    private void addWeight(Node<K, V> queue, long delta) {
+        if (queue == window)
+            windowWeight += delta;
+        else if (queue == probation)
+            probationWeight += delta;
+        else if (queue == protectedQueue)
+            protectedWeight += delta;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile long writeTime;
+        // guarded by policyLock
+        int weight;
+        Node<K, V> queue;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, int weight, long writeTime) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeTime = writeTime;
+        }
+
+        static <K, V> Node<K, V> sentinel() {
+            Node<K, V> s = new Node<>(null, null, 0, 0);
+            s.prev = s.next = s;
+            return s;
+        }
+    }
+}
+
+/**
+ * Count-min sketch of 4-bit counters, the popularity estimate behind TinyLFU admission. Each key is counted in four
+ * counters picked by independent hashes and its frequency is the smallest of them. After about ten increments per
+ * cached entry every counter is halved, so the estimate follows recent popularity rather than all-time counts.
+ */
+final class FrequencySketch {
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int tableMask;
+    private final int sampleSize;
+    private int additions;
+
+    FrequencySketch(int expectedEntries) {
+        int size = Integer.highestOneBit(Math.max(8, Math.min(expectedEntries, 1 << 26)) - 1) << 1;
+        table = new long[size];
+        tableMask = size - 1;
+        sampleSize = 10 * size;
+    }
+
+    int frequency(Object key) {
+        int hash = spread(key.hashCode());
+        int min = 15;
+        for (int i = 0; i < 4; i++) {
+            long h = mix(hash, i);
+            min = Math.min(min, (int) ((table[index(h)] >>> offset(h)) & 0xF));
+        }
+        return min;
+    }
+
+    void increment(Object key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            long h = mix(hash, i);
+            int index = index(h), offset = offset(h);
+            if (((table[index] >>> offset) & 0xF) != 0xF) {
+                table[index] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize)
+            reset();
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++)
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        additions >>>= 1;
+    }
+
+    private static int spread(int h) {
+        h ^= h >>> 17;
+        h *= 0xed5ad4bb;
+        h ^= h >>> 11;
+        return h;
+    }
+
+    private static long mix(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return h + (h >>> 32);
+    }
+
+    private int index(long h) {
+        return (int) (h >>> 8) & tableMask;
+    }
+
+    private static int offset(long h) {
+        return (int) (h & 15) << 2;
     }
 }
 
@@ -167,7 +744,7 @@ class CallbackExample {
             e.printStackTrace();
         }
 
-        // The WeakHashMap will automatically remove the callbacks that have been garbage collected
+        // Callbacks that have been garbage collected are skipped, and purged on the next registration
         callbackManager.printCallbacks();
     }
 }
@@ -189,26 +766,101 @@ class CallbackImpl implements Callback {
     }
 }
 
+/**
+ * Callbacks are held weakly in an immutable array that is replaced on every registration or removal (copy-on-write).
+ * Dispatch iterates whatever snapshot it read, without locking, so callbacks may register or unregister
+ * (even from inside a callback, or from other threads) while an action is being dispatched.
+ *
+ * Callbacks that have been garbage collected are skipped during dispatch and purged from the array by the next
+ * registration or removal, once the garbage collector has enqueued their references.
+ *
+ * Like the keys of a {@code WeakHashMap}, the callbacks form a set: a callback equal to one that is still registered
+ * is not added again, and removal matches by {@code equals}.
+ */
 class CallbackManager {
-    private Map<Callback, String> callbackMap;
+    private static final CallbackRef[] EMPTY = new CallbackRef[0];
 
-    public CallbackManager() {
-        callbackMap = new WeakHashMap<>();
-    }
+    private final AtomicReference<CallbackRef[]> callbacks = new AtomicReference<>(EMPTY);
+    private final ReferenceQueue<Callback> collected = new ReferenceQueue<>();
 
     public void registerCallback(Callback callback) {
-        callbackMap.put(callback, "someValue");
+        Objects.requireNonNull(callback);
+        boolean purge = drainCollected();
+        CallbackRef added = new CallbackRef(callback, collected);
+        while (true) {
+            CallbackRef[] current = callbacks.get();
+            if (contains(current, callback))
+                return;
+            CallbackRef[] next = copy(current, purge, null, 1);
+            next[next.length - 1] = added;
+            if (callbacks.compareAndSet(current, next))
+                return;
+        }
+    }
+
+    /**
+     * Removes the registered callback equal to {@code callback}, if any.
+     */
+    public void unregisterCallback(Callback callback) {
+        boolean purge = drainCollected();
+        while (true) {
+            CallbackRef[] current = callbacks.get();
+            CallbackRef[] next = copy(current, purge, callback, 0);
+            if (next.length == current.length || callbacks.compareAndSet(current, next))
+                return;
+        }
     }
 
     public void doAction() {
         // Simulating an action that invokes the registered callbacks
-        callbackMap.keySet().forEach(Callback::onCallback);
+        for (CallbackRef ref : callbacks.get()) {
+            Callback callback = ref.get();
+            if (callback != null)
+                callback.onCallback();
+        }
     }
 
     public void printCallbacks() {
         System.out.println("Callbacks:");
-        for (Callback callback : callbackMap.keySet()) {
-            System.out.println(callback);
+        for (CallbackRef ref : callbacks.get()) {
+            Callback callback = ref.get();
+            if (callback != null)
+                System.out.println(callback);
         }
     }
-}
\ No newline at end of file
+
+    // true if the garbage collector has cleared at least one callback since the last call
+    private boolean drainCollected() {
+        boolean any = false;
+        while (collected.poll() != null)
+            any = true;
+        return any;
+    }
+
+    // copies the snapshot without `removed` and, if purging, without cleared references, leaving `extra` free slots at the end
+    private static CallbackRef[] copy(CallbackRef[] current, boolean purge, Callback removed, int extra) {
+        CallbackRef[] next = new CallbackRef[current.length + extra];
+        int n = 0;
+        for (CallbackRef ref : current) {
+            Callback callback = ref.get();
+            if ((purge && callback == null) || (removed != null && removed.equals(callback)))
+                continue;
+            next[n++] = ref;
+        }
+        return n == current.length ? next : Arrays.copyOf(next, n + extra);
+    }
+
+    private static boolean contains(CallbackRef[] refs, Callback callback) {
+        for (CallbackRef ref : refs) {
+            if (callback.equals(ref.get()))
+                return true;
+        }
+        return false;
+    }
+
+    private static final class CallbackRef extends WeakReference<Callback> {
+        CallbackRef(Callback callback, ReferenceQueue<Callback> queue) {
+            super(callback, queue);
+        }
+    }
+}
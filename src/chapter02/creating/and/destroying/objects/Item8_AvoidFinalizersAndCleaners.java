@@ -1,7 +1,17 @@
 package chapter02.creating.and.destroying.objects;
 
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLongArray;
+
 public class Item8_AvoidFinalizersAndCleaners implements ILesson {
 
     @Override
@@ -16,42 +26,217 @@ public class Item8_AvoidFinalizersAndCleaners implements ILesson {
         System.out.println(Room.getNumRooms());
         // notice close method is not called
 
+        // the count is kept without a lock: reading it exactly costs the reader retries, never the rooms
+        System.out.println(Room.getApproximateNumRooms());
+
+    }
+
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter02Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        // 1000 tasks each open and release 100 rooms, reading the count every 64 rooms; reported per room.
+        // Room against MonitorRoom, the baseline Room that counts under a lock; release() is close() without the print
+        int tasks = 1000, roomsPerTask = 100;
+        Callable<Long> monitorRooms = () -> {
+            long seen = 0;
+            for (int i = 0; i < roomsPerTask; i++) {
+                new MonitorRoom(i).release();
+                if ((i & 63) == 0)
+                    seen += MonitorRoom.getNumRooms();
+            }
+            return seen;
+        };
+        Callable<Long> rooms = () -> {
+            long seen = 0;
+            for (int i = 0; i < roomsPerTask; i++) {
+                new Room(i).release();
+                if ((i & 63) == 0)
+                    seen += Room.getNumRooms();
+            }
+            return seen;
+        };
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        Callable<ExecutorService> platform = () -> Executors.newFixedThreadPool(threads);
+        addRoomStress(suite, "Item8.rooms.MonitorRoom[platform]", tasks, roomsPerTask, platform, monitorRooms);
+        addRoomStress(suite, "Item8.rooms.Room[platform]", tasks, roomsPerTask, platform, rooms);
+        // virtual threads need Java 21, and this code compiles against 17
+        Method virtualFactory;
+        try {
+            virtualFactory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+        } catch (NoSuchMethodException ex) {
+            virtualFactory = null;
+        }
+        if (virtualFactory != null) {
+            Method factory = virtualFactory;
+            Callable<ExecutorService> virtual = () -> (ExecutorService) factory.invoke(null);
+            addRoomStress(suite, "Item8.rooms.MonitorRoom[virtual]", tasks, roomsPerTask, virtual, monitorRooms);
+            addRoomStress(suite, "Item8.rooms.Room[virtual]", tasks, roomsPerTask, virtual, rooms);
+        } else {
+            System.out.printf("%-60s skipped: needs Java 21%n", "Item8.rooms.*[virtual]");
+        }
+
+        int[] a = {0};
+        suite.add("Item8.Room.getApproximateNumRooms", bh -> bh.consume(Room.getApproximateNumRooms() + a[0]++));
+        int[] e = {0};
+        suite.add("Item8.Room.getNumRooms", bh -> bh.consume(Room.getNumRooms() + e[0]++));
+    }
+
+    private static void addRoomStress(BenchmarkSuite suite, String name, int tasks, int roomsPerTask,
+                                      Callable<ExecutorService> executor, Callable<Long> task) {
+        ExecutorService[] pool = new ExecutorService[1];
+        List<Future<Long>> futures = new ArrayList<>(tasks);
+        suite.add(name, (long) tasks * roomsPerTask, () -> {
+            pool[0] = executor.call();
+            return pool[0]::shutdown;
+        }, bh -> {
+            futures.clear();
+            for (int t = 0; t < tasks; t++)
+                futures.add(pool[0].submit(task));
+            for (Future<Long> f : futures)
+                bh.consume(f.get().longValue());
+        });
     }
 }
 
 
 // An autocloseable class
 class Room implements AutoCloseable {
+    // lock-free, so opening rooms from many (virtual) threads neither contends on nor pins to a monitor
+    private static final LiveCounter numRooms = new LiveCounter();
+    private int numJunkPiles;
+
+    public Room(int numJunkPiles) {
+        numRooms.opened();
+        this.numJunkPiles = numJunkPiles;
+    }
+
+    @Override
+    public void close() {
+        release();
+        System.out.println("Cleaning room");
+    }
+
+    // close() without the output, for the benchmarks
+    void release() {
+        numRooms.closed();
+        numJunkPiles = 0;
+    }
+
+    /**
+     * The number of open rooms at some instant during the call.
+     */
+    public static int getNumRooms() {
+        return (int) numRooms.exact();
+    }
+
+    /**
+     * Cheaper than {@link #getNumRooms()}, but only exact while no room is opened or closed concurrently.
+     */
+    public static int getApproximateNumRooms() {
+        return (int) numRooms.approximate();
+    }
+}
+
+// Room as it counted before LiveCounter, under one lock; the baseline for the rooms benchmarks
+class MonitorRoom {
     private static final Object lock = new Object();
     private static int numRooms = 0;
     private int numJunkPiles;
 
-    public Room(int numJunkPiles) {
+    MonitorRoom(int numJunkPiles) {
         synchronized (lock) {
             numRooms++;
         }
         this.numJunkPiles = numJunkPiles;
     }
 
-    @Override
-    public void close() {
+    void release() {
         synchronized (lock) {
             numRooms--;
         }
-        System.out.println("Cleaning room");
         numJunkPiles = 0;
     }
 
-    public static int getNumRooms() {
+    static int getNumRooms() {
         synchronized (lock) {
             return numRooms;
         }
     }
 }
 
+/**
+ * Counts live resources without a shared lock or a single contended variable.
+ *
+ * Opens and closes are counted separately in striped, monotonically increasing counters; the stripe is picked from
+ * the current thread's id and each stripe sits on its own cache line. Because the counters only ever grow, two
+ * consecutive scans that agree prove nothing changed in between, which is what makes {@link #exact()} possible
+ * without stopping the updaters.
+ */
+final class LiveCounter {
+    // longs per stripe: opened, closed and padding up to a 64 byte cache line
+    private static final int PAD = 8;
+
+    private final AtomicLongArray counts;
+    private final int mask;
+
+    LiveCounter() {
+        this(Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 4 - 1) << 1);
+    }
 
+    LiveCounter(int stripes) {
+        if (Integer.bitCount(stripes) != 1)
+            throw new IllegalArgumentException("stripes must be a power of two: " + stripes);
+        // one spare stripe in front, so the first one does not share a line with the array header
+        counts = new AtomicLongArray((stripes + 1) * PAD);
+        mask = stripes - 1;
+    }
 
+    void opened() {
+        counts.getAndIncrement(stripe());
+    }
 
+    void closed() {
+        counts.getAndIncrement(stripe() + 1);
+    }
 
+    /**
+     * A single scan: closes are summed before opens, so the result is never negative, but it may not match
+     * the count at any one instant while resources are opened and closed concurrently.
+     */
+    long approximate() {
+        long closed = sum(1);
+        return sum(0) - closed;
+    }
 
+    /**
+     * Scans until two consecutive scans agree, so the result is the live count at some instant during the call.
+     * Updaters are never blocked; instead the reader retries while they make progress.
+     */
+    long exact() {
+        long closed = sum(1), opened = sum(0);
+        for (int attempt = 0; ; attempt++) {
+            long closedAgain = sum(1), openedAgain = sum(0);
+            if (closedAgain == closed && openedAgain == opened)
+                return opened - closed;
+            closed = closedAgain;
+            opened = openedAgain;
+            if (attempt < 64)
+                Thread.onSpinWait();
+            else
+                Thread.yield();
+        }
+    }
+
+    private int stripe() {
+        long id = Thread.currentThread().getId();
+        return ((int) (id * 0x9E3779B97F4A7C15L >>> 40) & mask) * PAD + PAD;
+    }
 
+    private long sum(int offset) {
+        long sum = 0;
+        for (int i = PAD + offset; i < counts.length(); i += PAD)
+            sum += counts.get(i);
+        return sum;
+    }
+}
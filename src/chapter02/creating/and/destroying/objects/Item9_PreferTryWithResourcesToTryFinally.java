@@ -1,10 +1,101 @@
 package chapter02.creating.and.destroying.objects;
 
+import benchmarks.BenchmarkSuite;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import static java.nio.file.StandardOpenOption.*;
 
 public class Item9_PreferTryWithResourcesToTryFinally {
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter02Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        for (int size : new int[]{64 << 10, 1 << 20, 16 << 20}) {
+            String label = "[size=" + (size >= 1 << 20 ? (size >> 20) + "MB" : (size >> 10) + "KB") + "]";
+            Path[] files = new Path[2];
+            Callable<AutoCloseable> setup = () -> {
+                files[0] = Files.createTempFile("item9-src", ".bin");
+                files[1] = Files.createTempFile("item9-dst", ".bin");
+                byte[] content = new byte[size];
+                new Random(size).nextBytes(content);
+                Files.write(files[0], content);
+                return () -> {
+                    Files.deleteIfExists(files[0]);
+                    Files.deleteIfExists(files[1]);
+                };
+            };
+            suite.add("Item9.copyWithResource" + label, 1, setup,
+                    bh -> ClosingResources.copyWithResource(files[0].toString(), files[1].toString()));
+            suite.add("Item9.copy" + label, 1, setup,
+                    bh -> ClosingResources.copy(files[0].toString(), files[1].toString()));
+            suite.add("Item9.copyWithChannels" + label, 1, setup,
+                    bh -> bh.consume(ClosingResources.copyWithChannels(files[0].toString(), files[1].toString())));
+        }
+
+        // scanning a 64 MB log for error lines
+        Path[] log = new Path[1];
+        Callable<AutoCloseable> logSetup = () -> {
+            log[0] = Files.createTempFile("item9-log", ".txt");
+            Random random = new Random(11);
+            try (BufferedWriter w = Files.newBufferedWriter(log[0])) {
+                for (long written = 0; written < 64 << 20; ) {
+                    String line = (random.nextInt(20) == 0 ? "ERROR" : "INFO") + " request " + random.nextInt()
+                            + " took " + random.nextInt(1000) + "ms";
+                    w.write(line);
+                    w.newLine();
+                    written += line.length() + 1;
+                }
+            }
+            return () -> Files.deleteIfExists(log[0]);
+        };
+        suite.add("Item9.scan.BufferedReader.readLine", 1, logSetup, bh -> {
+            long errors = 0;
+            try (BufferedReader r = Files.newBufferedReader(log[0])) {
+                for (String line; (line = r.readLine()) != null; ) {
+                    if (line.startsWith("ERROR"))
+                        errors++;
+                }
+            }
+            bh.consume(errors);
+        });
+        suite.add("Item9.scan.MappedLineReader.forEachLine", 1, logSetup, bh -> {
+            long[] errors = {0};
+            MappedLineReader.forEachLine(log[0], line -> {
+                if (line.startsWith("ERROR"))
+                    errors[0]++;
+            });
+            bh.consume(errors[0]);
+        });
+        suite.add("Item9.scan.MappedLineReader.forEachLineParallel", 1, logSetup, bh -> {
+            LongAdder errors = new LongAdder();
+            MappedLineReader.forEachLineParallel(log[0], Runtime.getRuntime().availableProcessors(), () -> line -> {
+                if (line.startsWith("ERROR"))
+                    errors.increment();
+            });
+            bh.consume(errors.sum());
+        });
+    }
 }
 
 
@@ -59,5 +150,309 @@ class ClosingResources {
         }
     }
 
+    private static final int CHUNK_SIZE = 1 << 20;
+    private static final ThreadLocal<ByteBuffer> CHUNK = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(CHUNK_SIZE));
+
+    // try-with-resources on channels: the kernel moves the bytes (sendfile/copy_file_range) without copying them through the heap
+    static CopyResult copyWithChannels(String src, String dst) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(src), READ);
+             FileChannel out = FileChannel.open(Paths.get(dst), WRITE, CREATE, TRUNCATE_EXISTING)) {
+            long start = System.nanoTime();
+            long size = in.size();
+            long position = 0;
+            long n;
+            while (position < size && (n = in.transferTo(position, size - position, out)) > 0)
+                position += n;
+            long zeroCopied = position;
+            // transferTo stopped short, or the size may be unknown (special files report 0): copy the rest through a large
+            // direct buffer, which copies nothing for a file that is really empty
+            if (position < size || size == 0)
+                position = copyChunked(in, out, position);
+            return new CopyResult(zeroCopied, position - zeroCopied, System.nanoTime() - start);
+        }
+    }
+
+    private static long copyChunked(FileChannel in, FileChannel out, long position) throws IOException {
+        ByteBuffer buf = CHUNK.get();
+        in.position(position);
+        out.position(position);
+        while (true) {
+            buf.clear();
+            int n = in.read(buf);
+            if (n < 0)
+                return position;
+            buf.flip();
+            while (buf.hasRemaining())
+                out.write(buf);
+            position += n;
+        }
+    }
+
+    static final class CopyResult {
+        private final long zeroCopyBytes;
+        private final long chunkedBytes;
+        private final long nanos;
+
+        CopyResult(long zeroCopyBytes, long chunkedBytes, long nanos) {
+            this.zeroCopyBytes = zeroCopyBytes;
+            this.chunkedBytes = chunkedBytes;
+            this.nanos = nanos;
+        }
+
+        long bytes() {
+            return zeroCopyBytes + chunkedBytes;
+        }
+
+        /**
+         * @return bytes moved by {@code transferTo}
+         */
+        long zeroCopyBytes() {
+            return zeroCopyBytes;
+        }
+
+        /**
+         * @return bytes copied through the direct buffer, after {@code transferTo} stopped short or could not be used
+         */
+        long chunkedBytes() {
+            return chunkedBytes;
+        }
+
+        double bytesPerSecond() {
+            return nanos == 0 ? Double.POSITIVE_INFINITY : bytes() * 1e9 / nanos;
+        }
+
+        @Override
+        public String toString() {
+            String how = chunkedBytes == 0 ? "zero-copy"
+                    : zeroCopyBytes == 0 ? "chunked"
+                    : String.format(Locale.ROOT, "%d bytes zero-copy, %d chunked", zeroCopyBytes, chunkedBytes);
+            return String.format(Locale.ROOT, "%d bytes in %.3f ms (%.1f MB/s, %s)", bytes(), nanos / 1e6,
+                    bytesPerSecond() / (1 << 20), how);
+        }
+    }
+}
+
+/**
+ * Streams the lines of a file without decoding them into Strings. The file is memory-mapped in segments and line
+ * boundaries are found directly in the mapped bytes, eight bytes at a time. Each line is handed to the handler as a
+ * {@link Line} view that is reused for the next line, so handlers must copy whatever they keep.
+ *
+ * Lines end at {@code \n}; a preceding {@code \r} is dropped. Mappings are released when the buffers are collected.
+ */
+final class MappedLineReader {
+    private static final long DEFAULT_SEGMENT = 1L << 28;
+    private static final long NEWLINES = 0x0A0A0A0A0A0A0A0AL;
+    private static final long LOW_BITS = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private MappedLineReader() {
+    }
+
+    @FunctionalInterface
+    interface LineHandler {
+        void onLine(Line line);
+    }
+
+    /**
+     * @return the number of lines read
+     */
+    static long forEachLine(Path file, LineHandler handler) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, READ)) {
+            return readRange(ch, 0, ch.size(), DEFAULT_SEGMENT, handler);
+        }
+    }
+
+    /**
+     * Splits the file into {@code parallelism} ranges at line boundaries and reads them concurrently. Lines within a
+     * range arrive in order, ranges do not; each range gets its own handler from {@code handlers}.
+     * @return the number of lines read
+     */
+    static long forEachLineParallel(Path file, int parallelism, Supplier<? extends LineHandler> handlers) throws IOException {
+        if (parallelism <= 0)
+            throw new IllegalArgumentException("parallelism must be positive");
+        try (FileChannel ch = FileChannel.open(file, READ)) {
+            long size = ch.size();
+            long[] bounds = new long[parallelism + 1];
+            bounds[parallelism] = size;
+            for (int k = 1; k < parallelism; k++)
+                bounds[k] = Math.max(bounds[k - 1], nextLineStart(ch, size * k / parallelism, size));
+
+            ExecutorService pool = Executors.newFixedThreadPool(parallelism);
+            try {
+                List<Future<Long>> parts = new ArrayList<>();
+                for (int k = 0; k < parallelism; k++) {
+                    long from = bounds[k], to = bounds[k + 1];
+                    LineHandler handler = handlers.get();
+                    parts.add(pool.submit(() -> readRange(ch, from, to, DEFAULT_SEGMENT, handler)));
+                }
+                long lines = 0;
+                for (Future<Long> part : parts)
+                    lines += part.get();
+                return lines;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("interrupted while reading " + file);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof IOException)
+                    throw (IOException) e.getCause();
+                throw new IOException(e.getCause());
+            } finally {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    // offset just past the first newline at or after `from`, or `size` if there is none
+    private static long nextLineStart(FileChannel ch, long from, long size) throws IOException {
+        if (from == 0)
+            return 0;
+        ByteBuffer buf = ByteBuffer.allocate(8192);
+        // a boundary belongs to the previous range if the byte before it is the newline
+        long pos = from - 1;
+        while (pos < size) {
+            buf.clear();
+            int n = ch.read(buf, pos);
+            if (n <= 0)
+                break;
+            for (int i = 0; i < n; i++) {
+                if (buf.get(i) == '\n')
+                    return pos + i + 1;
+            }
+            pos += n;
+        }
+        return size;
+    }
+
+    static long readRange(FileChannel ch, long from, long to, long segmentSize, LineHandler handler) throws IOException {
+        Line line = new Line();
+        long lines = 0;
+        long start = from;
+        long segment = segmentSize;
+        while (start < to) {
+            long length = Math.min(segment, to - start);
+            MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, start, length);
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            int limit = (int) length;
+            int lineStart = 0;
+            int nl;
+            while ((nl = indexOfNewline(buf, lineStart, limit)) >= 0) {
+                handler.onLine(line.reset(buf, lineStart, nl));
+                lines++;
+                lineStart = nl + 1;
+            }
+            if (start + length == to) {
+                // the last line of the range has no terminator
+                if (lineStart < limit) {
+                    handler.onLine(line.reset(buf, lineStart, limit));
+                    lines++;
+                }
+                return lines;
+            }
+            if (lineStart == 0) {
+                // a single line longer than the segment: map a larger one
+                if (segment >= Integer.MAX_VALUE)
+                    throw new IOException("line longer than " + Integer.MAX_VALUE + " bytes at offset " + start);
+                segment = Math.min(Integer.MAX_VALUE, segment * 2);
+                continue;
+            }
+            start += lineStart;
+            segment = segmentSize;
+        }
+        return lines;
+    }
+
+    // SWAR: xor with '\n' turns newline bytes into zero bytes, and (v - 0x01..) & ~v & 0x80.. flags the lowest zero byte exactly
+    static int indexOfNewline(ByteBuffer buf, int from, int limit) {
+        int i = from;
+        for (; i + Long.BYTES <= limit; i += Long.BYTES) {
+            long v = buf.getLong(i) ^ NEWLINES;
+            long found = (v - LOW_BITS) & ~v & HIGH_BITS;
+            if (found != 0)
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+        }
+        for (; i < limit; i++) {
+            if (buf.get(i) == '\n')
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * A reusable view of one line in the mapped bytes. As a {@link CharSequence}, including {@link #toString()}, every
+     * byte is one char (ISO-8859-1), which is exact for ASCII; {@link #decodeUtf8()} decodes the bytes as UTF-8 instead.
+     * Both allocate.
+     */
+    static final class Line implements CharSequence {
+        private ByteBuffer buf;
+        private int start;
+        private int length;
+
+        Line reset(ByteBuffer buf, int start, int end) {
+            if (end > start && buf.get(end - 1) == '\r')
+                end--;
+            this.buf = buf;
+            this.start = start;
+            this.length = end - start;
+            return this;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        public byte byteAt(int index) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException(index);
+            return buf.get(start + index);
+        }
+
+        @Override
+        public char charAt(int index) {
+            return (char) (byteAt(index) & 0xFF);
+        }
+
+        /**
+         * @return true if the line starts with the given ASCII prefix, compared byte by byte
+         */
+        public boolean startsWith(String asciiPrefix) {
+            if (asciiPrefix.length() > length)
+                return false;
+            for (int i = 0; i < asciiPrefix.length(); i++) {
+                if (buf.get(start + i) != (byte) asciiPrefix.charAt(i))
+                    return false;
+            }
+            return true;
+        }
+
+        /**
+         * Copies the line's bytes into {@code dst}, which must have room for {@link #length()} bytes.
+         */
+        public void copyTo(byte[] dst, int offset) {
+            buf.get(start, dst, offset, length);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            return decode(StandardCharsets.ISO_8859_1);
+        }
 
-}
\ No newline at end of file
+        /**
+         * @return the line decoded as UTF-8, whose length differs from {@link #length()} for non-ASCII text
+         */
+        public String decodeUtf8() {
+            return decode(StandardCharsets.UTF_8);
+        }
+
+        private String decode(Charset charset) {
+            byte[] bytes = new byte[length];
+            copyTo(bytes, 0);
+            return new String(bytes, charset);
+        }
+    }
+}
@@ -0,0 +1,250 @@
+package chapter02.creating.and.destroying.objects;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Compares how the Item 3 singleton strategies affect startup, which a micro benchmark inside one warm JVM cannot show.
+ *
+ * For every strategy a graph of singletons is generated and compiled: singleton i depends on singletons 2i+1 and 2i+2,
+ * and building one fills a 4096-entry table. The generated main, like a CLI tool, first registers every singleton by calling
+ * a static method on it, then uses the root, which only walks down its left-most dependencies.
+ * Each run forks a fresh JVM and reports the time from fork to first use, the classes loaded and the instances built.
+ *
+ * Command line: {@code [-n singletons] [-forks runsPerStrategy]}
+ */
+public class SingletonStartupBenchmark {
+
+    enum Strategy {
+        /** public static final INSTANCE field, like SingletonClass; dependencies are resolved in the constructor */
+        EAGER_FIELD,
+        /** single-element enum, like SingletonEnum; dependencies are resolved in the constructor */
+        ENUM,
+        /** LazyHolderSingleton; dependencies are resolved when first needed */
+        LAZY_HOLDER,
+        /** OnDemandSingleton (double-check idiom); dependencies are resolved when first needed */
+        ON_DEMAND
+    }
+
+    public static void main(String[] args) throws Exception {
+        int n = 500;
+        int forks = 5;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-n" -> n = Integer.parseInt(args[++i]);
+                case "-forks" -> forks = Integer.parseInt(args[++i]);
+                default -> throw new IllegalArgumentException("unknown argument: " + args[i]);
+            }
+        }
+        if (n <= 0 || forks <= 0)
+            throw new IllegalArgumentException("singletons and forks must be positive");
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        if (javac == null) {
+            System.out.println("no system Java compiler, run on a JDK rather than a JRE");
+            return;
+        }
+
+        Path root = Files.createTempDirectory("singletons");
+        try {
+            Map<Strategy, Path> classpaths = new EnumMap<>(Strategy.class);
+            for (Strategy strategy : Strategy.values())
+                classpaths.put(strategy, generate(javac, root.resolve(strategy.name()), strategy, n));
+
+            Map<Strategy, List<Run>> runs = new EnumMap<>(Strategy.class);
+            // interleave the strategies, so that a slower or faster phase of the machine does not favour one
+            for (int f = 0; f < forks; f++) {
+                for (Strategy strategy : Strategy.values())
+                    runs.computeIfAbsent(strategy, s -> new ArrayList<>()).add(fork(classpaths.get(strategy)));
+            }
+
+            System.out.printf("# %d singletons, median of %d forks%n", n, forks);
+            System.out.printf("%-12s %16s %12s %14s %10s%n", "strategy", "first use (ms)", "exit (ms)", "loaded classes", "instances");
+            for (Strategy strategy : Strategy.values()) {
+                List<Run> r = runs.get(strategy);
+                System.out.printf("%-12s %16d %12d %14d %10d%n", strategy,
+                        median(r, Run::firstUseMillis), median(r, Run::exitMillis),
+                        median(r, Run::loadedClasses), median(r, Run::instances));
+            }
+        } finally {
+            delete(root);
+        }
+    }
+
+    private record Run(long firstUseMillis, long exitMillis, long loadedClasses, long instances) {
+    }
+
+    private interface RunField {
+        long get(Run run);
+    }
+
+    private static long median(List<Run> runs, RunField field) {
+        long[] values = runs.stream().mapToLong(field::get).sorted().toArray();
+        return values[values.length / 2];
+    }
+
+    private static Run fork(Path classpath) throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        long started = System.currentTimeMillis();
+        Process process = new ProcessBuilder(java, "-cp", classpath.toString(), "gen.Start")
+                .redirectErrorStream(true)
+                .start();
+        String result = null;
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            for (String line; (line = out.readLine()) != null; ) {
+                if (line.startsWith("RESULT "))
+                    result = line;
+            }
+        }
+        int exit = process.waitFor();
+        long exited = System.currentTimeMillis();
+        if (exit != 0 || result == null)
+            throw new IllegalStateException("forked JVM failed with exit code " + exit);
+        // RESULT <first use, epoch ms> <loaded classes> <instances>
+        long[] fields = Arrays.stream(result.split(" ")).skip(1).mapToLong(Long::parseLong).toArray();
+        return new Run(fields[0] - started, exited - started, fields[1], fields[2]);
+    }
+
+    private static Path generate(JavaCompiler javac, Path dir, Strategy strategy, int n) throws IOException {
+        Path sources = Files.createDirectories(dir.resolve("src").resolve("gen"));
+        Path classes = Files.createDirectories(dir.resolve("classes"));
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < n; i++)
+            files.add(write(sources.resolve("S" + i + ".java"), singleton(strategy, i, n)));
+        files.add(write(sources.resolve("Start.java"), start(n)));
+
+        List<String> options = new ArrayList<>(List.of("-nowarn", "-d", classes.toString()));
+        options.addAll(files);
+        if (javac.run(null, null, null, options.toArray(new String[0])) != 0)
+            throw new IllegalStateException("could not compile the generated " + strategy + " singletons");
+        return classes;
+    }
+
+    private static String write(Path file, String source) throws IOException {
+        Files.writeString(file, source);
+        return file.toString();
+    }
+
+    private static String singleton(Strategy strategy, int i, int n) {
+        String name = "S" + i;
+        int left = 2 * i + 1, right = 2 * i + 2;
+        boolean eager = strategy == Strategy.EAGER_FIELD || strategy == Strategy.ENUM;
+        StringBuilder src = new StringBuilder("package gen;\n\n");
+        src.append(strategy == Strategy.ENUM ? "public enum " + name + " {\n    INSTANCE;\n\n" : "public final class " + name + " {\n");
+        switch (strategy) {
+            case EAGER_FIELD -> src.append("    public static final ").append(name).append(" INSTANCE = new ").append(name).append("();\n");
+            case ENUM -> { }
+            case LAZY_HOLDER -> src.append("    private static final class Holder {\n")
+                    .append("        static final ").append(name).append(" INSTANCE = new ").append(name).append("();\n")
+                    .append("    }\n");
+            case ON_DEMAND -> src.append("    private static volatile ").append(name).append(" instance;\n");
+        }
+        src.append("    private final long[] table = Start.table(").append(i).append(");\n");
+        if (eager) {
+            if (left < n)
+                src.append("    private final S").append(left).append(" left;\n");
+            if (right < n)
+                src.append("    private final S").append(right).append(" right;\n");
+        }
+
+        src.append("\n    ").append(strategy == Strategy.ENUM ? "" : "private ").append(name).append("() {\n")
+                .append("        Start.created();\n");
+        if (eager) {
+            if (left < n)
+                src.append("        left = S").append(left).append(".instance();\n");
+            if (right < n)
+                src.append("        right = S").append(right).append(".instance();\n");
+        }
+        src.append("    }\n\n");
+
+        src.append("    public static ").append(name).append(" instance() {\n");
+        switch (strategy) {
+            case EAGER_FIELD, ENUM -> src.append("        return INSTANCE;\n");
+            case LAZY_HOLDER -> src.append("        return Holder.INSTANCE;\n");
+            case ON_DEMAND -> src.append("        ").append(name).append(" result = instance;\n")
+                    .append("        if (result == null) {\n")
+                    .append("            synchronized (").append(name).append(".class) {\n")
+                    .append("                result = instance;\n")
+                    .append("                if (result == null)\n")
+                    .append("                    instance = result = new ").append(name).append("();\n")
+                    .append("            }\n")
+                    .append("        }\n")
+                    .append("        return result;\n");
+        }
+        src.append("    }\n\n");
+
+        src.append("    public static String describe() {\n        return \"").append(name).append("\";\n    }\n\n");
+        src.append("    public long work(int depth) {\n");
+        if (left < n) {
+            String dependency = eager ? "left" : "S" + left + ".instance()";
+            src.append("        return table[0] + (depth > 0 ? ").append(dependency).append(".work(depth - 1) : 0);\n");
+        } else {
+            src.append("        return table[0];\n");
+        }
+        src.append("    }\n}\n");
+        return src.toString();
+    }
+
+    private static String start(int n) {
+        StringBuilder src = new StringBuilder("""
+                package gen;
+
+                import java.lang.management.ManagementFactory;
+
+                public final class Start {
+                    private static int created;
+
+                    static void created() {
+                        created++;
+                    }
+
+                    static long[] table(int seed) {
+                        long[] table = new long[4096];
+                        for (int i = 0; i < table.length; i++)
+                            table[i] = seed * 31L + i;
+                        return table;
+                    }
+
+                    public static void main(String[] args) {
+                        StringBuilder registered = new StringBuilder();
+                """);
+        for (int i = 0; i < n; i++)
+            src.append("        registered.append(S").append(i).append(".describe());\n");
+        src.append("""
+                        long result = S0.instance().work(64);
+                        long firstUse = System.currentTimeMillis();
+                        int loaded = ManagementFactory.getClassLoadingMXBean().getLoadedClassCount();
+                        System.out.println("checksum " + (result + registered.length()));
+                        System.out.println("RESULT " + firstUse + " " + loaded + " " + created);
+                    }
+                }
+                """);
+        return src.toString();
+    }
+
+    private static void delete(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.delete(p);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        }
+    }
+}
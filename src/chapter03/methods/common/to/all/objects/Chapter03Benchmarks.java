@@ -0,0 +1,19 @@
+package chapter03.methods.common.to.all.objects;
+
+import benchmarks.BenchmarkSuite;
+
+/**
+ * Measures the performance claims made by the chapter 3 lessons.
+ * Run with {@code -wi/-i/-t} to change the iteration setup and any regex to select benchmarks, e.g. {@code Item11}.
+ */
+public class Chapter03Benchmarks {
+
+    public static void main(String[] args) {
+        BenchmarkSuite suite = new BenchmarkSuite("chapter03");
+        Item10_ObeyTheGeneralContractWhenOverridingEquals.benchmarks(suite);
+        Item11_AlwaysOverrideHasCodeWhenYouOverrideEquals.benchmarks(suite);
+        Item13_OverrideCloneJudiciously.benchmarks(suite);
+        Item14_ConsideringImplementingComparable.benchmarks(suite);
+        suite.run(args);
+    }
+}
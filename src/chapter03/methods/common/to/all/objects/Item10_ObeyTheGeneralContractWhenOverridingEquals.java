@@ -1,8 +1,22 @@
 package chapter03.methods.common.to.all.objects;
 
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class Item10_ObeyTheGeneralContractWhenOverridingEquals implements ILesson {
     @Override
@@ -56,6 +70,102 @@ public class Item10_ObeyTheGeneralContractWhenOverridingEquals implements ILesso
          * In summary, don’t override the equals method unless you have to: in many cases, the implementation inherited from Object does exactly what you want.
          */
     }
+
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter03Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        // 100k points over a 100k x 100k square; queries cover about 40 points each
+        int n = 100_000, side = 100_000, half = 1_000;
+        Random random = new Random(42);
+        List<Transitive.Point> points = new ArrayList<>(n);
+        Set<Transitive.Point> hashSet = new HashSet<>();
+        PointIndex index = new PointIndex(10);
+        while (points.size() < n) {
+            Transitive.Point p = new Transitive.Point(random.nextInt(side), random.nextInt(side));
+            if (hashSet.add(p)) {
+                points.add(p);
+                index.add(p);
+            }
+        }
+        int[][] queries = new int[1 << 10][];
+        for (int i = 0; i < queries.length; i++)
+            queries[i] = new int[]{random.nextInt(side), random.nextInt(side)};
+        int qmask = queries.length - 1;
+
+        int[] q = {0, 0, 0, 0, 0, 0};
+        suite.add("Item10.contains.HashSet<Point>", bh -> {
+            int[] c = queries[q[0]++ & qmask];
+            bh.consume(hashSet.contains(new Transitive.Point(c[0], c[1])));
+        });
+        suite.add("Item10.contains.PointIndex", bh -> {
+            int[] c = queries[q[1]++ & qmask];
+            bh.consume(index.contains(new Transitive.Point(c[0], c[1])));
+        });
+        suite.add("Item10.range.scan", bh -> {
+            int[] c = queries[q[2]++ & qmask];
+            List<Object> found = new ArrayList<>();
+            for (Transitive.Point p : points) {
+                if (Math.abs(p.x() - c[0]) <= half && Math.abs(p.y() - c[1]) <= half)
+                    found.add(p);
+            }
+            bh.consume(found);
+        });
+        suite.add("Item10.range.PointIndex", bh -> {
+            int[] c = queries[q[3]++ & qmask];
+            bh.consume(index.range(c[0] - half, c[1] - half, c[0] + half, c[1] + half));
+        });
+        suite.add("Item10.nearest8.scan", bh -> {
+            int[] c = queries[q[4]++ & qmask];
+            PriorityQueue<Transitive.Point> best = new PriorityQueue<>(
+                    Comparator.comparingLong((Transitive.Point p) -> distanceSquared(p, c)).reversed());
+            for (Transitive.Point p : points) {
+                best.add(p);
+                if (best.size() > 8)
+                    best.poll();
+            }
+            bh.consume(best);
+        });
+        suite.add("Item10.nearest8.PointIndex", bh -> {
+            int[] c = queries[q[5]++ & qmask];
+            bh.consume(index.nearest(c[0], c[1], 8));
+        });
+
+        // case-insensitive lookups of 10k words, queried in mixed case: TreeMap with CASE_INSENSITIVE_ORDER against
+        // HashMaps keyed on CaseInsensitiveKey, folding each query, with the query keys built ahead, and interned
+        String[] words = new String[10_000];
+        Map<String, Integer> treeMap = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+        Map<CaseInsensitiveKey, Integer> keyMap = new HashMap<>();
+        CaseInsensitiveKey.Pool pool = new CaseInsensitiveKey.Pool();
+        Map<CaseInsensitiveKey, Integer> internedMap = new HashMap<>();
+        for (int i = 0; i < words.length; i++) {
+            words[i] = "word-" + Integer.toString(random.nextInt(), 36) + "-Über";
+            treeMap.put(words[i], i);
+            keyMap.put(new CaseInsensitiveKey(words[i]), i);
+            internedMap.put(pool.intern(words[i]), i);
+        }
+        String[] wordQueries = new String[1 << 12];
+        CaseInsensitiveKey[] keyQueries = new CaseInsensitiveKey[wordQueries.length];
+        CaseInsensitiveKey[] internedQueries = new CaseInsensitiveKey[wordQueries.length];
+        for (int i = 0; i < wordQueries.length; i++) {
+            String w = words[random.nextInt(words.length)];
+            wordQueries[i] = random.nextBoolean() ? w.toUpperCase(Locale.ROOT) : w;
+            keyQueries[i] = new CaseInsensitiveKey(wordQueries[i]);
+            internedQueries[i] = pool.intern(wordQueries[i]);
+        }
+        int wmask = wordQueries.length - 1;
+        int[] w = {0, 0, 0, 0, 0};
+        suite.add("Item10.caseInsensitive.TreeMap.get", bh -> bh.consume(treeMap.get(wordQueries[w[0]++ & wmask])));
+        suite.add("Item10.caseInsensitive.HashMap.get[fold]", bh -> bh.consume(keyMap.get(new CaseInsensitiveKey(wordQueries[w[1]++ & wmask]))));
+        suite.add("Item10.caseInsensitive.HashMap.get[key]", bh -> bh.consume(keyMap.get(keyQueries[w[2]++ & wmask])));
+        suite.add("Item10.caseInsensitive.HashMap.get[interned]", bh -> bh.consume(internedMap.get(internedQueries[w[3]++ & wmask])));
+        suite.add("Item10.caseInsensitive.Pool.intern", bh -> bh.consume(pool.intern(wordQueries[w[4]++ & wmask])));
+    }
+
+    private static long distanceSquared(Transitive.Point p, int[] c) {
+        long dx = p.x() - c[0], dy = p.y() - c[1];
+        return dx * dx + dy * dy;
+    }
 }
 
 class SymmetricLesson implements ILesson {
@@ -71,6 +181,12 @@ class SymmetricLesson implements ILesson {
         Symmetric s = new Symmetric("CAPS");
         Boolean isSymmetrical2 = s.equals(caps) == caps.equals(s);
         System.out.println(isSymmetrical2); // true
+
+        // Symmetric still folds case on every equals and hashCode; fold once and key maps on the folded form instead
+        Map<CaseInsensitiveKey, Integer> counts = new HashMap<>();
+        for (String word : new String[]{"caps", "CAPS", "Caps", "lower"})
+            counts.merge(new CaseInsensitiveKey(word), 1, Integer::sum);
+        System.out.println(counts); // {lower=1, caps=3}
     }
 
     static class SymmetricViolation {
@@ -106,6 +222,106 @@ class SymmetricLesson implements ILesson {
                     ((Symmetric) o).s.equalsIgnoreCase(s);
         }
 
+        // must agree with equalsIgnoreCase, so it has to fold case on every call; CaseInsensitiveKey folds it once
+        @Override
+        public int hashCode() {
+            return new CaseInsensitiveKey(s).hashCode();
+        }
+    }
+}
+
+/**
+ * An immutable string that equals another exactly when {@link String#equalsIgnoreCase} says so (for well-formed
+ * text; strings with unpaired surrogates may differ), with a hashCode to match, so it can key a HashMap where
+ * Symmetric could not.
+ *
+ * Case is folded once, at construction, the way equalsIgnoreCase compares characters: to upper case, then to lower
+ * case. The folded text is kept as Latin-1 bytes when every character fits, UTF-16 otherwise, and its hash is cached,
+ * so equals is an identity check, then a hash check, then a single array comparison.
+ */
+final class CaseInsensitiveKey {
+    private final String original;
+    private final byte[] folded;
+    private final boolean latin1;
+    private final int hash;
+
+    CaseInsensitiveKey(String s) {
+        original = s;
+        int n = s.length();
+        // a code point may fold to one that needs a surrogate pair
+        char[] chars = new char[2 * n];
+        int length = 0;
+        boolean fitsLatin1 = true;
+        for (int i = 0; i < n; ) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                chars[length++] = c >= 'A' && c <= 'Z' ? (char) (c | 0x20) : c;
+                i++;
+            } else {
+                int cp = s.codePointAt(i);
+                i += Character.charCount(cp);
+                int f = Character.toLowerCase(Character.toUpperCase(cp));
+                fitsLatin1 &= f <= 0xFF;
+                length += Character.toChars(f, chars, length);
+            }
+        }
+        if (fitsLatin1) {
+            folded = new byte[length];
+            for (int i = 0; i < length; i++)
+                folded[i] = (byte) chars[i];
+        } else {
+            folded = new byte[2 * length];
+            for (int i = 0; i < length; i++) {
+                folded[2 * i] = (byte) (chars[i] >> 8);
+                folded[2 * i + 1] = (byte) chars[i];
+            }
+        }
+        latin1 = fitsLatin1;
+        hash = Arrays.hashCode(folded) ^ (fitsLatin1 ? 0 : 0x5bd1e995);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o)
+            return true;
+        if (!(o instanceof CaseInsensitiveKey))
+            return false;
+        CaseInsensitiveKey k = (CaseInsensitiveKey) o;
+        return k.hash == hash && k.latin1 == latin1 && Arrays.equals(k.folded, folded);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    /**
+     * @return the string as it was given, case preserved
+     */
+    @Override
+    public String toString() {
+        return original;
+    }
+
+    /**
+     * Hands out one key per case-insensitive value, so that equal keys are usually the same object and compare
+     * by identity, and a key used in many maps is stored once. Safe for concurrent use; it never forgets a key.
+     */
+    static final class Pool {
+        private final ConcurrentHashMap<CaseInsensitiveKey, CaseInsensitiveKey> keys = new ConcurrentHashMap<>();
+
+        CaseInsensitiveKey intern(String s) {
+            return intern(new CaseInsensitiveKey(s));
+        }
+
+        CaseInsensitiveKey intern(CaseInsensitiveKey key) {
+            CaseInsensitiveKey pooled = keys.putIfAbsent(key, key);
+            return pooled == null ? key : pooled;
+        }
+
+        int size() {
+            return keys.size();
+        }
     }
 }
 
@@ -119,6 +335,16 @@ class Transitive implements ILesson {
          * The equals implementation for Timestamp does violate symmetry and can cause erratic behavior if Timestamp and Date objects are used in the same collection or are otherwise intermixed
          * This behavior of the Timestamp class was a mistake and should not be emulated.
          */
+
+        // with equals and hashCode agreeing, points can be looked up by value, or by location through an index
+        PointIndex index = new PointIndex(4);
+        index.add(new Point(1, 2));
+        index.add(new ColorPointSubClass(1, 2, "RED")); // equals Point(1, 2), so not added again
+        index.add(new ColorPoint(new Point(1, 2), "RED"));
+        index.add(new ColorPoint(new Point(40, -7), "BLUE"));
+        assert index.size() == 3;
+        assert index.contains(new Point(1, 2)) && !index.contains(new ColorPoint(new Point(1, 2), "BLUE"));
+        System.out.println(index.range(0, 0, 10, 10) + " " + index.nearest(35, 0, 1));
     }
 
     static class Point {
@@ -137,6 +363,41 @@ class Transitive implements ILesson {
             Point p = (Point) o;
             return p.x == x && p.y == y;
         }
+
+        // equal points have equal coordinates, hence equal packed coordinates
+        @Override
+        public int hashCode() {
+            return Long.hashCode(packed() * 0x9E3779B97F4A7C15L);
+        }
+
+        @Override
+        public String toString() {
+            return "(" + x + ", " + y + ")";
+        }
+
+        int x() {
+            return x;
+        }
+
+        int y() {
+            return y;
+        }
+
+        long packed() {
+            return pack(x, y);
+        }
+
+        static long pack(int x, int y) {
+            return (long) x << 32 | (y & 0xFFFFFFFFL);
+        }
+
+        static int unpackX(long packed) {
+            return (int) (packed >> 32);
+        }
+
+        static int unpackY(long packed) {
+            return (int) packed;
+        }
     }
 
     // DO NOT DO INHERIT, NO WAY TO MAINTAIN TRANSITIVITY AND SYMMETRY
@@ -173,5 +434,470 @@ class Transitive implements ILesson {
             ColorPoint cp = (ColorPoint) o;
             return cp.point.equals(point) && cp.color.equals(color);
         }
+
+        @Override
+        public int hashCode() {
+            return 31 * point.hashCode() + color.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return color + point;
+        }
+
+        String getColor() {
+            return color;
+        }
+    }
+}
+
+/**
+ * A set of {@link Transitive.Point}s and {@link Transitive.ColorPoint}s that can be queried by location.
+ *
+ * Membership follows the lesson's equals: a point is its coordinates, so adding an equal point (or a
+ * ColorPointSubClass at the same place, which equals it) again is a no-op; a color point is its point and its
+ * color, so color points of different colors can share a location, and a point never equals a color point.
+ * Internally every member is a packed coordinate plus a tag, {@link #NO_COLOR} or an interned color.
+ */
+final class PointIndex {
+    static final int NO_COLOR = -1;
+
+    private final SpatialGrid grid;
+    private final Map<String, Integer> colorIds = new HashMap<>();
+    private final List<String> colors = new ArrayList<>();
+
+    /**
+     * @param cellShift the grid's cells are 2^cellShift wide; pick about the typical query radius
+     */
+    PointIndex(int cellShift) {
+        grid = new SpatialGrid(cellShift);
+    }
+
+    boolean add(Transitive.Point p) {
+        return grid.insert(p.x(), p.y(), NO_COLOR);
+    }
+
+    boolean add(Transitive.ColorPoint cp) {
+        Transitive.Point p = cp.getPoint();
+        return grid.insert(p.x(), p.y(), colorId(cp.getColor()));
+    }
+
+    boolean remove(Transitive.Point p) {
+        return grid.remove(p.x(), p.y(), NO_COLOR);
+    }
+
+    boolean remove(Transitive.ColorPoint cp) {
+        Integer color = colorIds.get(cp.getColor());
+        Transitive.Point p = cp.getPoint();
+        return color != null && grid.remove(p.x(), p.y(), color);
+    }
+
+    boolean contains(Transitive.Point p) {
+        return grid.contains(p.x(), p.y(), NO_COLOR);
+    }
+
+    boolean contains(Transitive.ColorPoint cp) {
+        Integer color = colorIds.get(cp.getColor());
+        Transitive.Point p = cp.getPoint();
+        return color != null && grid.contains(p.x(), p.y(), color);
+    }
+
+    int size() {
+        return grid.size();
+    }
+
+    /**
+     * @return the members within the rectangle, bounds included: Points and ColorPoints
+     */
+    List<Object> range(int minX, int minY, int maxX, int maxY) {
+        List<Object> found = new ArrayList<>();
+        grid.forEachInRange(minX, minY, maxX, maxY, (x, y, tag) -> found.add(member(Transitive.Point.pack(x, y), tag)));
+        return found;
+    }
+
+    /**
+     * @return up to k members, nearest first
+     */
+    List<Object> nearest(int x, int y, int k) {
+        long[] packed = new long[k];
+        int[] tags = new int[k];
+        int n = grid.nearest(x, y, k, packed, tags);
+        List<Object> found = new ArrayList<>(n);
+        for (int i = 0; i < n; i++)
+            found.add(member(packed[i], tags[i]));
+        return found;
+    }
+
+    private Object member(long packed, int tag) {
+        Transitive.Point p = new Transitive.Point(Transitive.Point.unpackX(packed), Transitive.Point.unpackY(packed));
+        return tag == NO_COLOR ? p : new Transitive.ColorPoint(p, colors.get(tag));
+    }
+
+    private int colorId(String color) {
+        return colorIds.computeIfAbsent(Objects.requireNonNull(color), c -> {
+            colors.add(c);
+            return colors.size() - 1;
+        });
+    }
+}
+
+/**
+ * A uniform grid over the whole int plane holding (x, y, tag) entries, each at most once.
+ *
+ * Only occupied cells exist: they are found through an open-addressed table keyed on the packed cell coordinates,
+ * each keeps its entries in its own packed-coordinate and tag arrays, and a cell is dropped when its last entry is
+ * removed. Queries that would visit more grid cells
+ * than there are occupied cells scan the occupied cells instead, so sparse data far apart stays cheap.
+ */
+final class SpatialGrid {
+    @FunctionalInterface
+    interface EntryConsumer {
+        void accept(int x, int y, int tag);
+    }
+
+    private final int shift;
+    // cell table: packed cell coordinates and cell id + 1 per slot, 0 marks an empty slot
+    private long[] slotKeys = new long[64];
+    private int[] slotCells = new int[64];
+    // per cell
+    private long[] cellKeys = new long[16];
+    private long[][] points = new long[16][];
+    private int[][] tags = new int[16][];
+    private int[] counts = new int[16];
+    private int cells;
+    private int size;
+    // bounding box of the occupied cells, refitted before the next query once a cell on its edge is dropped
+    private int minCx = Integer.MAX_VALUE, maxCx = Integer.MIN_VALUE, minCy = Integer.MAX_VALUE, maxCy = Integer.MIN_VALUE;
+    private boolean boundsStale;
+
+    SpatialGrid(int cellShift) {
+        if (cellShift < 0 || cellShift > 31)
+            throw new IllegalArgumentException("cellShift must be within [0, 31]: " + cellShift);
+        this.shift = cellShift;
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean insert(int x, int y, int tag) {
+        long point = Transitive.Point.pack(x, y);
+        int cell = cell(x >> shift, y >> shift, true);
+        if (indexOf(cell, point, tag) >= 0)
+            return false;
+        int n = counts[cell];
+        if (n == points[cell].length) {
+            points[cell] = Arrays.copyOf(points[cell], n * 2);
+            tags[cell] = Arrays.copyOf(tags[cell], n * 2);
+        }
+        points[cell][n] = point;
+        tags[cell][n] = tag;
+        counts[cell]++;
+        size++;
+        return true;
+    }
+
+    boolean remove(int x, int y, int tag) {
+        int cell = cell(x >> shift, y >> shift, false);
+        int i = cell < 0 ? -1 : indexOf(cell, Transitive.Point.pack(x, y), tag);
+        if (i < 0)
+            return false;
+        int last = --counts[cell];
+        points[cell][i] = points[cell][last];
+        tags[cell][i] = tags[cell][last];
+        size--;
+        if (last == 0)
+            dropCell(cell);
+        return true;
+    }
+
+    boolean contains(int x, int y, int tag) {
+        int cell = cell(x >> shift, y >> shift, false);
+        return cell >= 0 && indexOf(cell, Transitive.Point.pack(x, y), tag) >= 0;
+    }
+
+    void forEachInRange(int minX, int minY, int maxX, int maxY, EntryConsumer action) {
+        if (minX > maxX || minY > maxY || size == 0)
+            return;
+        fitBounds();
+        int fromCx = Math.max(minX >> shift, minCx), toCx = Math.min(maxX >> shift, maxCx);
+        int fromCy = Math.max(minY >> shift, minCy), toCy = Math.min(maxY >> shift, maxCy);
+        if (fromCx > toCx || fromCy > toCy)
+            return;
+        if ((long) (toCx - fromCx + 1) * (toCy - fromCy + 1) > cells) {
+            for (int cell = 0; cell < cells; cell++)
+                forEachInRange(cell, minX, minY, maxX, maxY, action);
+        } else {
+            for (int cx = fromCx; ; cx++) {
+                for (int cy = fromCy; ; cy++) {
+                    int cell = cell(cx, cy, false);
+                    if (cell >= 0)
+                        forEachInRange(cell, minX, minY, maxX, maxY, action);
+                    if (cy == toCy)
+                        break;
+                }
+                if (cx == toCx)
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Finds the k entries nearest to (x, y), nearest first. Distances are compared as doubles, so ties between
+     * entries billions apart may be broken arbitrarily.
+     * @return the number of entries found, at most k
+     */
+    int nearest(int x, int y, int k, long[] packedOut, int[] tagsOut) {
+        if (k <= 0 || size == 0)
+            return 0;
+        fitBounds();
+        Nearest best = new Nearest(k);
+        long qx = x >> shift, qy = y >> shift;
+        long cellSize = 1L << shift;
+        for (long r = 0; ; r++) {
+            if ((2 * r + 1) * (2 * r + 1) > 4L * cells) {
+                // the rings are getting bigger than the occupied cells: scan those instead
+                best = new Nearest(k);
+                for (int cell = 0; cell < cells; cell++)
+                    best.offer(cell, x, y);
+                break;
+            }
+            for (long cx = qx - r; cx <= qx + r; cx++) {
+                best.offerCell(cx, qy - r, x, y);
+                if (r > 0)
+                    best.offerCell(cx, qy + r, x, y);
+            }
+            for (long cy = qy - r + 1; cy < qy + r; cy++) {
+                best.offerCell(qx - r, cy, x, y);
+                best.offerCell(qx + r, cy, x, y);
+            }
+            double reach = (double) r * cellSize;
+            if (best.full() && best.worst() <= reach * reach)
+                break;
+            if (qx - r <= minCx && qx + r >= maxCx && qy - r <= minCy && qy + r >= maxCy)
+                break;
+        }
+        return best.drainTo(packedOut, tagsOut);
+    }
+
+    private void forEachInRange(int cell, int minX, int minY, int maxX, int maxY, EntryConsumer action) {
+        long[] p = points[cell];
+        for (int i = 0, n = counts[cell]; i < n; i++) {
+            int px = Transitive.Point.unpackX(p[i]), py = Transitive.Point.unpackY(p[i]);
+            if (px >= minX && px <= maxX && py >= minY && py <= maxY)
+                action.accept(px, py, tags[cell][i]);
+        }
+    }
+
+    private int indexOf(int cell, long point, int tag) {
+        long[] p = points[cell];
+        int[] t = tags[cell];
+        for (int i = 0, n = counts[cell]; i < n; i++) {
+            if (p[i] == point && t[i] == tag)
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * @return the cell id, or -1 if the cell is not occupied and create is false
+     */
+    private int cell(int cx, int cy, boolean create) {
+        long key = Transitive.Point.pack(cx, cy);
+        int mask = slotKeys.length - 1;
+        for (int i = slot(key, mask); ; i = (i + 1) & mask) {
+            if (slotCells[i] == 0)
+                return create ? newCell(key, cx, cy, i) : -1;
+            if (slotKeys[i] == key)
+                return slotCells[i] - 1;
+        }
+    }
+
+    private int newCell(long key, int cx, int cy, int slot) {
+        if (cells == counts.length) {
+            cellKeys = Arrays.copyOf(cellKeys, cells * 2);
+            points = Arrays.copyOf(points, cells * 2);
+            tags = Arrays.copyOf(tags, cells * 2);
+            counts = Arrays.copyOf(counts, cells * 2);
+        }
+        int cell = cells++;
+        cellKeys[cell] = key;
+        points[cell] = new long[4];
+        tags[cell] = new int[4];
+        slotKeys[slot] = key;
+        slotCells[slot] = cell + 1;
+        minCx = Math.min(minCx, cx);
+        maxCx = Math.max(maxCx, cx);
+        minCy = Math.min(minCy, cy);
+        maxCy = Math.max(maxCy, cy);
+        if (cells * 2 > slotKeys.length)
+            rehash();
+        return cell;
+    }
+
+    // removes the emptied cell from the table and moves the last cell into its id
+    private void dropCell(int cell) {
+        long key = cellKeys[cell];
+        int cx = Transitive.Point.unpackX(key), cy = Transitive.Point.unpackY(key);
+        if (cx == minCx || cx == maxCx || cy == minCy || cy == maxCy)
+            boundsStale = true;
+        int mask = slotKeys.length - 1;
+        int hole = slotOf(key, mask);
+        // backward-shift deletion: pull later entries of the probe run into the hole unless it would put them
+        // before their home slot
+        for (int i = (hole + 1) & mask; slotCells[i] != 0; i = (i + 1) & mask) {
+            int home = slot(slotKeys[i], mask);
+            if (((i - home) & mask) >= ((i - hole) & mask)) {
+                slotKeys[hole] = slotKeys[i];
+                slotCells[hole] = slotCells[i];
+                hole = i;
+            }
+        }
+        slotKeys[hole] = 0;
+        slotCells[hole] = 0;
+
+        int last = --cells;
+        if (cell != last) {
+            cellKeys[cell] = cellKeys[last];
+            points[cell] = points[last];
+            tags[cell] = tags[last];
+            counts[cell] = counts[last];
+            slotCells[slotOf(cellKeys[cell], mask)] = cell + 1;
+        }
+        points[last] = null;
+        tags[last] = null;
+        counts[last] = 0;
+    }
+
+    private int slotOf(long key, int mask) {
+        int i = slot(key, mask);
+        while (slotKeys[i] != key || slotCells[i] == 0)
+            i = (i + 1) & mask;
+        return i;
+    }
+
+    private void fitBounds() {
+        if (!boundsStale)
+            return;
+        minCx = minCy = Integer.MAX_VALUE;
+        maxCx = maxCy = Integer.MIN_VALUE;
+        for (int cell = 0; cell < cells; cell++) {
+            int cx = Transitive.Point.unpackX(cellKeys[cell]), cy = Transitive.Point.unpackY(cellKeys[cell]);
+            minCx = Math.min(minCx, cx);
+            maxCx = Math.max(maxCx, cx);
+            minCy = Math.min(minCy, cy);
+            maxCy = Math.max(maxCy, cy);
+        }
+        boundsStale = false;
+    }
+
+    private void rehash() {
+        slotKeys = new long[slotKeys.length * 2];
+        slotCells = new int[slotCells.length * 2];
+        int mask = slotKeys.length - 1;
+        for (int cell = 0; cell < cells; cell++) {
+            int i = slot(cellKeys[cell], mask);
+            while (slotCells[i] != 0)
+                i = (i + 1) & mask;
+            slotKeys[i] = cellKeys[cell];
+            slotCells[i] = cell + 1;
+        }
+    }
+
+    private static int slot(long key, int mask) {
+        return (int) (key * 0x9E3779B97F4A7C15L >>> 40) & mask;
+    }
+
+    // the k best entries so far, as a max-heap on distance
+    private final class Nearest {
+        private final double[] distances;
+        private final long[] found;
+        private final int[] foundTags;
+        private int n;
+
+        Nearest(int k) {
+            distances = new double[k];
+            found = new long[k];
+            foundTags = new int[k];
+        }
+
+        boolean full() {
+            return n == distances.length;
+        }
+
+        double worst() {
+            return distances[0];
+        }
+
+        void offerCell(long cx, long cy, int x, int y) {
+            if (cx < minCx || cx > maxCx || cy < minCy || cy > maxCy)
+                return;
+            int cell = cell((int) cx, (int) cy, false);
+            if (cell >= 0)
+                offer(cell, x, y);
+        }
+
+        void offer(int cell, int x, int y) {
+            long[] p = points[cell];
+            for (int i = 0, count = counts[cell]; i < count; i++) {
+                double dx = (double) Transitive.Point.unpackX(p[i]) - x;
+                double dy = (double) Transitive.Point.unpackY(p[i]) - y;
+                double d = dx * dx + dy * dy;
+                if (n < distances.length) {
+                    distances[n] = d;
+                    found[n] = p[i];
+                    foundTags[n] = tags[cell][i];
+                    siftUp(n++);
+                } else if (d < distances[0]) {
+                    distances[0] = d;
+                    found[0] = p[i];
+                    foundTags[0] = tags[cell][i];
+                    siftDown(0);
+                }
+            }
+        }
+
+        int drainTo(long[] packedOut, int[] tagsOut) {
+            int count = n;
+            while (n > 0) {
+                packedOut[n - 1] = found[0];
+                tagsOut[n - 1] = foundTags[0];
+                swap(0, --n);
+                siftDown(0);
+            }
+            return count;
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (distances[parent] >= distances[i])
+                    return;
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            for (int child; (child = 2 * i + 1) < n; i = child) {
+                if (child + 1 < n && distances[child + 1] > distances[child])
+                    child++;
+                if (distances[i] >= distances[child])
+                    return;
+                swap(i, child);
+            }
+        }
+
+        private void swap(int i, int j) {
+            double d = distances[i];
+            distances[i] = distances[j];
+            distances[j] = d;
+            long p = found[i];
+            found[i] = found[j];
+            found[j] = p;
+            int t = foundTags[i];
+            foundTags[i] = foundTags[j];
+            foundTags[j] = t;
+        }
     }
 }
\ No newline at end of file
@@ -1,8 +1,16 @@
 package chapter03.methods.common.to.all.objects;
 
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.LongConsumer;
 
 public class Item11_AlwaysOverrideHasCodeWhenYouOverrideEquals implements ILesson {
 
@@ -23,46 +31,445 @@ public class Item11_AlwaysOverrideHasCodeWhenYouOverrideEquals implements ILesso
         short lineNumber = 3;
 
         PhoneNumber pn = new PhoneNumber(areaCode, prefix, lineNumber);
+        assert pn.equals(new PhoneNumber(areaCode, prefix, lineNumber)) && pn.hashCode() == new PhoneNumber(areaCode, prefix, lineNumber).hashCode();
+
+        // a primitive-keyed table answers lookups without creating a PhoneNumber at all
+        PhoneNumberSet numbers = new PhoneNumberSet();
+        numbers.add(pn);
+        assert numbers.contains(areaCode, prefix, lineNumber);
     }
-}
 
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter03Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        PhoneNumber[] numbers = new PhoneNumber[64];
+        for (int i = 0; i < numbers.length; i++)
+            numbers[i] = new PhoneNumber((short) (100 + i), (short) (555 + i), (short) (1000 + 7 * i));
+        int mask = numbers.length - 1;
 
-class PhoneNumber {
+        int[] f = {0};
+        suite.add("Item11.PhoneNumber.fastest", bh -> bh.consume(numbers[f[0]++ & mask].fastest()));
+        int[] m = {0};
+        suite.add("Item11.PhoneNumber.mediocre", bh -> bh.consume(numbers[m[0]++ & mask].mediocre()));
+        int[] c = {0};
+        suite.add("Item11.PhoneNumber.hashCode[cached]", bh -> bh.consume(numbers[c[0]++ & mask].hashCode()));
 
-    short areaCode;
-    short prefix;
-    short lineNum;
+        // lookups in a million-entry table, half of them misses; the queries are given as raw fields
+        int n = 1 << 20;
+        short[][] queries = new short[1 << 12][];
+        Random random = new Random(42);
+        Set<PhoneNumber> hashSet = new HashSet<>();
+        Map<PhoneNumber, String> hashMap = new HashMap<>();
+        PhoneNumberSet set = new PhoneNumberSet(n);
+        PhoneNumberMap<String> map = new PhoneNumberMap<>(n);
+        for (int i = 0; set.size() < n; ) {
+            short ac = (short) random.nextInt(1000), pf = (short) random.nextInt(1000), ln = (short) random.nextInt(10_000);
+            if (set.add(ac, pf, ln)) {
+                PhoneNumber pn = new PhoneNumber(ac, pf, ln);
+                hashSet.add(pn);
+                hashMap.put(pn, "x");
+                map.put(ac, pf, ln, "x");
+                if (i < queries.length)
+                    queries[i++] = new short[]{ac, pf, ln};
+            }
+        }
+        for (int i = 1; i < queries.length; i += 2)
+            queries[i] = new short[]{(short) random.nextInt(1000), (short) random.nextInt(1000), (short) (10_000 + random.nextInt(10_000))};
+        int qmask = queries.length - 1;
+        int[] q = {0, 0, 0, 0};
+        suite.add("Item11.lookup.HashSet.contains", bh -> {
+            short[] k = queries[q[0]++ & qmask];
+            bh.consume(hashSet.contains(new PhoneNumber(k[0], k[1], k[2])));
+        });
+        suite.add("Item11.lookup.PhoneNumberSet.contains", bh -> {
+            short[] k = queries[q[1]++ & qmask];
+            bh.consume(set.contains(k[0], k[1], k[2]));
+        });
+        suite.add("Item11.lookup.HashMap.get", bh -> {
+            short[] k = queries[q[2]++ & qmask];
+            bh.consume(hashMap.get(new PhoneNumber(k[0], k[1], k[2])));
+        });
+        suite.add("Item11.lookup.PhoneNumberMap.get", bh -> {
+            short[] k = queries[q[3]++ & qmask];
+            bh.consume(map.get(k[0], k[1], k[2]));
+        });
+    }
+}
+
+
+/**
+ * Area code, prefix and line number are packed into the low 48 bits of one long (16 bits each), so an instance is
+ * a header plus two words, equality is a single comparison, and collections can key on the packed value
+ * without holding PhoneNumber objects at all, see {@link PhoneNumberSet} and {@link PhoneNumberMap}.
+ */
+final class PhoneNumber {
+    private final long packed;
+    private int hashCode; // Automatically initialized to 0
 
     PhoneNumber(short ac, short pf, short ln) {
-        this.areaCode = ac;
-        this.prefix = pf;
-        this.lineNum = ln;
+        this.packed = pack(ac, pf, ln);
+    }
 
+    private PhoneNumber(long packed) {
+        this.packed = packed;
     }
+
+    static long pack(short ac, short pf, short ln) {
+        return (ac & 0xFFFFL) << 32 | (pf & 0xFFFFL) << 16 | (ln & 0xFFFFL);
+    }
+
+    static PhoneNumber fromPacked(long packed) {
+        if ((packed >>> 48) != 0)
+            throw new IllegalArgumentException("not a packed phone number: " + Long.toHexString(packed));
+        return new PhoneNumber(packed);
+    }
+
+    long packed() {
+        return packed;
+    }
+
+    short areaCode() {
+        return (short) (packed >>> 32);
+    }
+
+    short prefix() {
+        return (short) (packed >>> 16);
+    }
+
+    short lineNum() {
+        return (short) packed;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o == this || o instanceof PhoneNumber && ((PhoneNumber) o).packed == packed;
+    }
+
+    /*
+     * If a class is immutable and the cost of computing the hash code is significant, consider caching the hash code in the object.
+     * Lazily initialized: the race between threads is benign, since every thread computes the same value.
+     */
     @Override
     public int hashCode() {
-        int result = 31 * Short.hashCode(this.areaCode);
-        result = 31 * result + Short.hashCode(prefix);
-        result = 31 * result + Short.hashCode(lineNum);
+        int result = hashCode;
+        if (result == 0) {
+            result = fastest();
+            hashCode = result;
+        }
         return result;
     }
 
-    private int fastest() {
+    int fastest() {
         /*
          * The value 31 was chosen because it is an odd prime. If it were even and the multiplication overflowed, information would be lost, because multiplication by 2 is equivalent to shifting.
          * The advantage of using a prime is less clear, but it is traditional. A nice property of 31 is that the multiplication can be replaced by a shift and a subtraction for better performance on some architectures: 31 * i == (i << 5) - i.
          */
-        int result = 31 * Short.hashCode(this.areaCode);
-        result = 31 * result + Short.hashCode(prefix);
-        result = 31 * result + Short.hashCode(lineNum);
+        int result = 31 * Short.hashCode(areaCode());
+        result = 31 * result + Short.hashCode(prefix());
+        result = 31 * result + Short.hashCode(lineNum());
         return result;
     }
 
-    private int mediocre() {
+    int mediocre() {
         /*
          * entail array creation to pass a variable number of arguments, as well as boxing and unboxing if any of the arguments are of primitive type.
          * This style of hash function is recommended for use only in situations where performance is not critical
          */
-        return Objects.hash(lineNum, prefix, areaCode);
+        return Objects.hash(lineNum(), prefix(), areaCode());
+    }
+
+    /**
+     * Spreads a packed number over an open-addressed table of {@code mask + 1} slots (Fibonacci hashing).
+     */
+    static int slot(long packed, int mask) {
+        return (int) ((packed * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+    }
+}
+
+/**
+ * Open-addressed (linear probing) set of phone numbers stored as packed longs. Membership tests take the three
+ * fields directly, so a lookup allocates nothing, and each member costs 8 bytes of table rather than an object
+ * plus a HashMap node.
+ */
+final class PhoneNumberSet {
+    // a packed number never has its top 16 bits set
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private int mask;
+    private int size;
+
+    PhoneNumberSet() {
+        this(16);
+    }
+
+    PhoneNumberSet(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean add(PhoneNumber pn) {
+        return addPacked(pn.packed());
+    }
+
+    public boolean add(short ac, short pf, short ln) {
+        return addPacked(PhoneNumber.pack(ac, pf, ln));
+    }
+
+    public boolean contains(PhoneNumber pn) {
+        return containsPacked(pn.packed());
+    }
+
+    public boolean contains(short ac, short pf, short ln) {
+        return containsPacked(PhoneNumber.pack(ac, pf, ln));
+    }
+
+    public boolean remove(short ac, short pf, short ln) {
+        return removePacked(PhoneNumber.pack(ac, pf, ln));
+    }
+
+    public boolean remove(PhoneNumber pn) {
+        return removePacked(pn.packed());
+    }
+
+    boolean containsPacked(long packed) {
+        for (int i = PhoneNumber.slot(packed, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == packed)
+                return true;
+            if (k == EMPTY)
+                return false;
+        }
+    }
+
+    boolean addPacked(long packed) {
+        int i = PhoneNumber.slot(packed, mask);
+        for (long k; (k = keys[i]) != EMPTY; i = (i + 1) & mask) {
+            if (k == packed)
+                return false;
+        }
+        keys[i] = packed;
+        if (++size > maxSize())
+            resize();
+        return true;
+    }
+
+    boolean removePacked(long packed) {
+        for (int i = PhoneNumber.slot(packed, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == EMPTY)
+                return false;
+            if (k == packed) {
+                deleteAt(i);
+                size--;
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Visits every member as a packed long, see {@link PhoneNumber#fromPacked}.
+     */
+    public void forEachPacked(LongConsumer action) {
+        for (long k : keys) {
+            if (k != EMPTY)
+                action.accept(k);
+        }
+    }
+
+    // backward-shift deletion keeps every probe sequence unbroken without tombstones
+    private void deleteAt(int hole) {
+        for (int j = (hole + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = PhoneNumber.slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                hole = j;
+            }
+        }
+        keys[hole] = EMPTY;
+    }
+
+    private void resize() {
+        long[] old = keys;
+        allocate(old.length * 2);
+        for (long k : old) {
+            if (k != EMPTY) {
+                int i = PhoneNumber.slot(k, mask);
+                while (keys[i] != EMPTY)
+                    i = (i + 1) & mask;
+                keys[i] = k;
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
     }
-}
\ No newline at end of file
+
+    private int maxSize() {
+        return keys.length - (keys.length >>> 2); // load factor 0.75
+    }
+
+    static int capacityFor(int expectedSize) {
+        if (expectedSize < 0)
+            throw new IllegalArgumentException("expectedSize < 0: " + expectedSize);
+        long needed = Math.max(16, (long) expectedSize * 4 / 3 + 1);
+        if (needed > 1 << 30)
+            throw new IllegalArgumentException("too many phone numbers: " + expectedSize);
+        return Integer.highestOneBit((int) needed - 1) << 1;
+    }
+}
+
+/**
+ * Open-addressed map from phone numbers, stored as packed longs, to values. Like {@link PhoneNumberSet},
+ * lookups take the three fields directly and never create a PhoneNumber.
+ */
+final class PhoneNumberMap<V> {
+    private static final long EMPTY = -1L;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size;
+
+    PhoneNumberMap() {
+        this(16);
+    }
+
+    PhoneNumberMap(int expectedSize) {
+        allocate(PhoneNumberSet.capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public V get(short ac, short pf, short ln) {
+        return getPacked(PhoneNumber.pack(ac, pf, ln));
+    }
+
+    public V get(PhoneNumber pn) {
+        return getPacked(pn.packed());
+    }
+
+    public boolean containsKey(short ac, short pf, short ln) {
+        return indexOf(PhoneNumber.pack(ac, pf, ln)) >= 0;
+    }
+
+    public V put(PhoneNumber pn, V value) {
+        return putPacked(pn.packed(), value);
+    }
+
+    public V put(short ac, short pf, short ln, V value) {
+        return putPacked(PhoneNumber.pack(ac, pf, ln), value);
+    }
+
+    public V remove(short ac, short pf, short ln) {
+        return removePacked(PhoneNumber.pack(ac, pf, ln));
+    }
+
+    public V remove(PhoneNumber pn) {
+        return removePacked(pn.packed());
+    }
+
+    @SuppressWarnings("unchecked")
+    V getPacked(long packed) {
+        int i = indexOf(packed);
+        return i < 0 ? null : (V) values[i];
+    }
+
+    @SuppressWarnings("unchecked")
+    V putPacked(long packed, V value) {
+        int i = PhoneNumber.slot(packed, mask);
+        for (long k; (k = keys[i]) != EMPTY; i = (i + 1) & mask) {
+            if (k == packed) {
+                V old = (V) values[i];
+                values[i] = value;
+                return old;
+            }
+        }
+        keys[i] = packed;
+        values[i] = value;
+        if (++size > keys.length - (keys.length >>> 2))
+            resize();
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    V removePacked(long packed) {
+        int i = indexOf(packed);
+        if (i < 0)
+            return null;
+        V old = (V) values[i];
+        deleteAt(i);
+        size--;
+        return old;
+    }
+
+    /**
+     * Visits every entry with its key as a packed long, see {@link PhoneNumber#fromPacked}.
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachPacked(PackedEntryConsumer<? super V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != EMPTY)
+                action.accept(keys[i], (V) values[i]);
+        }
+    }
+
+    @FunctionalInterface
+    interface PackedEntryConsumer<V> {
+        void accept(long packed, V value);
+    }
+
+    private int indexOf(long packed) {
+        for (int i = PhoneNumber.slot(packed, mask); ; i = (i + 1) & mask) {
+            long k = keys[i];
+            if (k == packed)
+                return i;
+            if (k == EMPTY)
+                return -1;
+        }
+    }
+
+    private void deleteAt(int hole) {
+        for (int j = (hole + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+            int home = PhoneNumber.slot(keys[j], mask);
+            if (((j - home) & mask) >= ((j - hole) & mask)) {
+                keys[hole] = keys[j];
+                values[hole] = values[j];
+                hole = j;
+            }
+        }
+        keys[hole] = EMPTY;
+        values[hole] = null;
+    }
+
+    private void resize() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate(oldKeys.length * 2);
+        for (int j = 0; j < oldKeys.length; j++) {
+            if (oldKeys[j] != EMPTY) {
+                int i = PhoneNumber.slot(oldKeys[j], mask);
+                while (keys[i] != EMPTY)
+                    i = (i + 1) & mask;
+                keys[i] = oldKeys[j];
+                values[i] = oldValues[j];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new Object[capacity];
+        Arrays.fill(keys, EMPTY);
+        mask = capacity - 1;
+    }
+}
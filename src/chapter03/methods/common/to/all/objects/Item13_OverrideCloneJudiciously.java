@@ -1,7 +1,16 @@
 package chapter03.methods.common.to.all.objects;
 
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.Arrays;
+
 public class Item13_OverrideCloneJudiciously implements ILesson {
     @Override
     public void doLesson() {
@@ -47,22 +56,113 @@ public class Item13_OverrideCloneJudiciously implements ILesson {
             throw new AssertionError("should not happen");
         }
 
+        // copying a large array on every clone is wasted when the copies are only read: share it until someone writes
+        Carefully cow = new Carefully(new int[]{5, 6, 7}, true);
+        try {
+            Carefully cowClone = cow.clone();
+            assert cowClone.arr == cow.arr : "shared until written";
+            cow.set(0, 3);
+
+            assert cowClone.get(0) == 5 : "should not be modified";
+        } catch (CloneNotSupportedException e) {
+            throw new AssertionError("should not happen");
+        }
+
+
+    }
+
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter03Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        for (int size : new int[]{16, 1 << 10, 1 << 16}) {
+            int[] values = new int[size];
+            Arrays.setAll(values, i -> i);
+            Carefully eager = new Carefully(values, false);
+            Carefully cow = new Carefully(values, true);
+            suite.add("Item13.copy.clone[" + size + "]", bh -> bh.consume(eager.clone()));
+            suite.add("Item13.copy.copyConstructor[" + size + "]", bh -> bh.consume(new Carefully(eager)));
+            suite.add("Item13.copy.copyOnWrite[" + size + "]", bh -> bh.consume(cow.clone()));
+            // a clone that is written pays the copy after all
+            suite.add("Item13.copy.copyOnWrite+set[" + size + "]", bh -> {
+                Carefully c = cow.clone();
+                c.set(0, 1);
+                bh.consume(c);
+            });
+            suite.add("Item13.copy.serialization[" + size + "]", bh -> bh.consume(serialCopy(eager)));
+        }
+    }
 
+    private static Object serialCopy(Serializable original) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(original);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return in.readObject();
+        }
     }
 }
 
-class Carefully implements Cloneable {
+class Carefully implements Cloneable, Serializable {
+    private static final long serialVersionUID = 1L;
+
     public int[] arr = new int[1];
+    /*
+     * In copy-on-write mode clone() shares arr instead of copying it, and set() copies it before the first write.
+     * Writes must then go through set(): writing to arr directly would show through every clone sharing it.
+     */
+    private final boolean copyOnWrite;
+    // whether arr may be shared with a clone; never serialized, since a deserialized copy owns its array
+    private transient boolean shared;
 
     Carefully(int i) {
         this.arr[0] = i;
+        this.copyOnWrite = false;
+    }
+
+    Carefully(int[] values, boolean copyOnWrite) {
+        this.arr = values.clone();
+        this.copyOnWrite = copyOnWrite;
+    }
+
+    // copy constructor, the alternative to clone() recommended above
+    Carefully(Carefully original) {
+        this.arr = original.arr.clone();
+        this.copyOnWrite = original.copyOnWrite;
+    }
+
+    int get(int index) {
+        return arr[index];
+    }
+
+    void set(int index, int value) {
+        if (shared) {
+            // the other copies keep the old array; this is conservative, the last holder of a shared array copies it too
+            arr = arr.clone();
+            shared = false;
+        }
+        arr[index] = value;
+    }
+
+    int length() {
+        return arr.length;
+    }
+
+    boolean isCopyOnWrite() {
+        return copyOnWrite;
     }
 
     @Override
     protected Carefully clone() throws CloneNotSupportedException {
         try {
             Carefully c = (Carefully) super.clone();
-            c.arr = this.arr.clone();
+            if (copyOnWrite) {
+                shared = true;
+                c.shared = true;
+            } else {
+                c.arr = this.arr.clone();
+            }
             return c;
         } catch (CloneNotSupportedException e) {
             throw new AssertionError();
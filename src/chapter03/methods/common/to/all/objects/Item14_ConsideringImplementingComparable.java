@@ -1,8 +1,11 @@
 package chapter03.methods.common.to.all.objects;
 
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
 import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
 
 public class Item14_ConsideringImplementingComparable implements ILesson {
     @Override
@@ -22,9 +25,45 @@ public class Item14_ConsideringImplementingComparable implements ILesson {
          * Instead, use the static compare methods in the boxed primitive classes or the comparator construction methods in the Comparator interface.
          */
 
-    }
+        // when sorting millions of elements, the comparator chain itself becomes the cost; the fields can be radix sorted instead
+        HasOrder[] orders = {new HasOrder(2, 1, 0), new HasOrder(-1, 5, 5), new HasOrder(2, 0, 9), new HasOrder(2, 1, -3)};
+        HasOrderSort.sort(orders);
+        System.out.println(Arrays.toString(orders));
 
+    }
 
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter03Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        // each invocation sorts a fresh copy of a million elements, reported per element
+        int n = 1 << 20;
+        Random random = new Random(42);
+        HasOrder[] unsorted = new HasOrder[n];
+        for (int i = 0; i < n; i++)
+            unsorted[i] = new HasOrder(random.nextInt(1000), random.nextInt(), random.nextInt());
+        HasOrder[] work = new HasOrder[n];
+        suite.add("Item14.sort.Arrays.sort[comparator]", n, bh -> {
+            System.arraycopy(unsorted, 0, work, 0, n);
+            Arrays.sort(work);
+            bh.consume(work[0]);
+        });
+        suite.add("Item14.sort.Arrays.parallelSort[comparator]", n, bh -> {
+            System.arraycopy(unsorted, 0, work, 0, n);
+            Arrays.parallelSort(work);
+            bh.consume(work[0]);
+        });
+        suite.add("Item14.sort.HasOrderSort[sequential]", n, bh -> {
+            System.arraycopy(unsorted, 0, work, 0, n);
+            HasOrderSort.sort(work, false);
+            bh.consume(work[0]);
+        });
+        suite.add("Item14.sort.HasOrderSort[parallel]", n, bh -> {
+            System.arraycopy(unsorted, 0, work, 0, n);
+            HasOrderSort.sort(work, true);
+            bh.consume(work[0]);
+        });
+    }
 }
 
 class HasOrder implements Comparable<HasOrder> {
@@ -33,6 +72,24 @@ class HasOrder implements Comparable<HasOrder> {
     private int field2;
     private int field3;
 
+    HasOrder(int field1, int field2, int field3) {
+        this.field1 = field1;
+        this.field2 = field2;
+        this.field3 = field3;
+    }
+
+    int field1() {
+        return field1;
+    }
+
+    int field2() {
+        return field2;
+    }
+
+    int field3() {
+        return field3;
+    }
+
     /*
      * concise approach, at the cost of performance
      */
@@ -48,4 +105,116 @@ class HasOrder implements Comparable<HasOrder> {
          */
         return COMPARATOR.compare(this, o);
     }
+
+    @Override
+    public String toString() {
+        return "(" + field1 + ", " + field2 + ", " + field3 + ")";
+    }
+}
+
+/**
+ * Sorts HasOrder arrays into their natural order without calling the comparator.
+ *
+ * The three fields are sorted with a stable LSD radix sort, least significant field first, one byte per pass.
+ * Each element travels as a long holding the current field (sign flipped, so that it sorts as unsigned) in the
+ * high half and its original index in the low half; passes whose byte is the same for every element are skipped.
+ * Large arrays count and scatter each pass in parallel chunks. The objects are reordered once, at the end.
+ */
+final class HasOrderSort {
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int RADIX = 256;
+
+    private HasOrderSort() {
+    }
+
+    static void sort(HasOrder[] a) {
+        sort(a, a.length >= PARALLEL_THRESHOLD);
+    }
+
+    static void sort(HasOrder[] a, boolean parallel) {
+        int n = a.length;
+        if (n < 2)
+            return;
+        int chunks = parallel ? Math.max(1, Math.min(Runtime.getRuntime().availableProcessors() * 4, n / 4096)) : 1;
+        long[] keys = new long[n];
+        long[] buffer = new long[n];
+        for (int i = 0; i < n; i++)
+            keys[i] = key(a[i].field3(), i);
+        for (int field = 2; ; field--) {
+            long[] sorted = sortByHighHalf(keys, buffer, chunks);
+            buffer = sorted == keys ? buffer : keys;
+            keys = sorted;
+            if (field == 0)
+                break;
+            for (int i = 0; i < n; i++) {
+                int index = (int) keys[i];
+                keys[i] = key(field == 2 ? a[index].field2() : a[index].field1(), index);
+            }
+        }
+
+        HasOrder[] sorted = new HasOrder[n];
+        for (int i = 0; i < n; i++)
+            sorted[i] = a[(int) keys[i]];
+        System.arraycopy(sorted, 0, a, 0, n);
+    }
+
+    private static long key(int field, int index) {
+        return (long) (field ^ Integer.MIN_VALUE) << 32 | index;
+    }
+
+    /**
+     * @return whichever of the two arrays holds the sorted keys
+     */
+    private static long[] sortByHighHalf(long[] src, long[] dst, int chunks) {
+        int n = src.length;
+        int chunkSize = (n + chunks - 1) / chunks;
+        int[][] counts = new int[chunks][RADIX];
+        for (int shift = 32; shift < 64; shift += 8) {
+            int s = shift;
+            long[] from = src, to = dst;
+            forEachChunk(chunks, c -> {
+                int[] count = counts[c];
+                Arrays.fill(count, 0);
+                for (int i = c * chunkSize, end = Math.min(n, i + chunkSize); i < end; i++)
+                    count[(int) (from[i] >>> s) & 0xFF]++;
+            });
+            if (singleDigit(counts, n))
+                continue;
+            // turn the counts into each chunk's starting offset per digit, chunk by chunk to stay stable
+            int offset = 0;
+            for (int d = 0; d < RADIX; d++) {
+                for (int c = 0; c < chunks; c++) {
+                    int count = counts[c][d];
+                    counts[c][d] = offset;
+                    offset += count;
+                }
+            }
+            forEachChunk(chunks, c -> {
+                int[] next = counts[c];
+                for (int i = c * chunkSize, end = Math.min(n, i + chunkSize); i < end; i++)
+                    to[next[(int) (from[i] >>> s) & 0xFF]++] = from[i];
+            });
+            src = to;
+            dst = from;
+        }
+        return src;
+    }
+
+    private static boolean singleDigit(int[][] counts, int n) {
+        for (int d = 0; d < RADIX; d++) {
+            int total = 0;
+            for (int[] count : counts)
+                total += count[d];
+            if (total != 0)
+                return total == n;
+        }
+        return false;
+    }
+
+    private static void forEachChunk(int chunks, IntConsumer action) {
+        if (chunks == 1)
+            action.accept(0);
+        else
+            IntStream.range(0, chunks).parallel().forEach(action);
+    }
 }
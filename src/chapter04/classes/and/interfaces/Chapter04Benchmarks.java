@@ -0,0 +1,19 @@
+package chapter04.classes.and.interfaces;
+
+import benchmarks.BenchmarkSuite;
+
+/**
+ * Measures the performance claims made by the chapter 4 lessons.
+ * Run with {@code -wi/-i/-t} to change the iteration setup and any regex to select benchmarks, e.g. {@code Item17}.
+ */
+public class Chapter04Benchmarks {
+
+    public static void main(String[] args) {
+        BenchmarkSuite suite = new BenchmarkSuite("chapter04");
+        Item17_MinimizeMutability.benchmarks(suite);
+        Item15_MinimizeTheAccessibilityOfClassesAndMembers.benchmarks(suite);
+        Item18_FavorCompositionOverInheritance.benchmarks(suite);
+        Item23_PreferClassHierarchiesToTaggedClasses.benchmarks(suite);
+        suite.run(args);
+    }
+}
@@ -0,0 +1,72 @@
+package chapter04.classes.and.interfaces;
+
+import benchmarks.BenchmarkSuite;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Measures how Item 20's interface calls and Item 23's figure designs hold up as a call site sees more receiver types:
+ * the JIT inlines a monomorphic or bimorphic site behind a type check, but a megamorphic one becomes a real
+ * interface call that nothing can be inlined through.
+ *
+ * Each family has eight implementations, the lesson's own two plus six more declared next to the lesson's
+ * {@code dispatchBenchmarks}. A benchmark loops over 4096 receivers whose types are drawn at random from the first 1,
+ * 2, 4 or 8. Area is computed three ways: a virtual call on Figure, a switch on the tag of a single tagged class, and
+ * an instanceof chain over a sealed interface (pattern matching for switch is not final before Java 21).
+ *
+ * Type profiles are kept per call site for the life of the JVM, so each receiver count runs in a JVM of its own, like
+ * JMH's forks. Command line: {@code [-receivers n] [suite options...]}; without -receivers, one JVM is forked for each
+ * of 1, 2, 4 and 8, passing the other options on (a -rf file gets the receiver count appended to its name).
+ */
+public class DispatchBenchmarks {
+    private static final int[] RECEIVERS = {1, 2, 4, 8};
+    private static final int CALLS = 1 << 12;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        List<String> options = new ArrayList<>(Arrays.asList(args));
+        int at = options.indexOf("-receivers");
+        if (at >= 0) {
+            int receivers = Integer.parseInt(options.get(at + 1));
+            options.subList(at, at + 2).clear();
+            BenchmarkSuite suite = new BenchmarkSuite("dispatch, " + receivers + " receiver type(s)");
+            register(suite, receivers);
+            suite.run(options.toArray(new String[0]));
+            return;
+        }
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        for (int receivers : RECEIVERS) {
+            List<String> command = new ArrayList<>(List.of(java, "-cp", System.getProperty("java.class.path"),
+                    DispatchBenchmarks.class.getName(), "-receivers", Integer.toString(receivers)));
+            command.addAll(options);
+            // one result file per fork, results.csv becomes results-receivers1.csv and so on
+            int rf = command.indexOf("-rf");
+            if (rf >= 0 && rf + 1 < command.size())
+                command.set(rf + 1, command.get(rf + 1).replaceFirst("(\\.[^./\\\\]*)?$", "-receivers" + receivers + "$1"));
+            int exit = new ProcessBuilder(command).inheritIO().start().waitFor();
+            if (exit != 0)
+                throw new IllegalStateException("benchmark JVM for " + receivers + " receiver type(s) exited with " + exit);
+        }
+    }
+
+    static void register(BenchmarkSuite suite, int receivers) {
+        Item20_PreferInterfacesToAbstractClasses.dispatchBenchmarks(suite, receivers);
+        Item23_PreferClassHierarchiesToTaggedClasses.dispatchBenchmarks(suite, receivers);
+    }
+
+    /**
+     * @return the receiver type of each call, drawn at random from the first {@code receivers} of eight; every family
+     * gets the same sequence
+     */
+    static int[] receiverKinds(int receivers) {
+        Random random = new Random(42);
+        int[] kinds = new int[CALLS];
+        for (int i = 0; i < CALLS; i++)
+            kinds[i] = random.nextInt(receivers);
+        return kinds;
+    }
+}
@@ -1,11 +1,22 @@
 package chapter04.classes.and.interfaces;
 
-import com.sun.javafx.collections.UnmodifiableListSet;
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
+import java.nio.IntBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.AbstractList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.PrimitiveIterator;
+import java.util.RandomAccess;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.IntConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 public class Item15_MinimizeTheAccessibilityOfClassesAndMembers implements ILesson {
 
@@ -25,14 +36,216 @@ public class Item15_MinimizeTheAccessibilityOfClassesAndMembers implements ILess
             assert WithArrayField.VALUES.get(0) == 1;
         }
 
+        // the same guarantee for primitives, without boxing each value or copying the array for each reader
+        IntList ints = WithArrayField.INTS;
+        assert ints.getInt(0) == 1 && ints.intStream().sum() == 6 && ints.equals(WithArrayField.VALUES);
+        try {
+            ints.asIntBuffer().put(0, 5);
+        } catch (ReadOnlyBufferException e) {
+            assert ints.getInt(0) == 1;
+        }
+
+    }
+
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter04Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        // reading every value of the shared constant, as a reader of WithArrayField would
+        suite.add("Item15.WithArrayField.getArr", bh -> {
+            int sum = 0;
+            for (int v : WithArrayField.getArr())
+                sum += v;
+            bh.consume(sum);
+        });
+        suite.add("Item15.WithArrayField.VALUES", bh -> {
+            int sum = 0;
+            for (int i = 0; i < WithArrayField.VALUES.size(); i++)
+                sum += WithArrayField.VALUES.get(i);
+            bh.consume(sum);
+        });
+        suite.add("Item15.WithArrayField.INTS", bh -> {
+            int sum = 0;
+            for (int i = 0; i < WithArrayField.INTS.size(); i++)
+                sum += WithArrayField.INTS.getInt(i);
+            bh.consume(sum);
+        });
+
+        // the same over 4096 values outside the Integer cache, reported per value
+        int n = 1 << 12;
+        int[] array = new int[n];
+        Arrays.setAll(array, i -> 1_000 + i);
+        List<Integer> boxed = Collections.unmodifiableList(Arrays.stream(array).boxed().collect(Collectors.toList()));
+        IntList ints = IntList.of(array);
+        suite.add("Item15.bulk.clone", n, bh -> {
+            int sum = 0;
+            for (int v : array.clone())
+                sum += v;
+            bh.consume(sum);
+        });
+        suite.add("Item15.bulk.unmodifiableList", n, bh -> {
+            int sum = 0;
+            for (int i = 0; i < n; i++)
+                sum += boxed.get(i);
+            bh.consume(sum);
+        });
+        suite.add("Item15.bulk.IntList.getInt", n, bh -> {
+            int sum = 0;
+            for (int i = 0; i < n; i++)
+                sum += ints.getInt(i);
+            bh.consume(sum);
+        });
+        suite.add("Item15.bulk.IntList.intStream", n, bh -> bh.consume(ints.intStream().sum()));
+        suite.add("Item15.bulk.IntList.asIntBuffer", n, bh -> {
+            IntBuffer buffer = ints.asIntBuffer();
+            int sum = 0;
+            for (int i = 0; i < n; i++)
+                sum += buffer.get(i);
+            bh.consume(sum);
+        });
     }
 }
 
 class WithArrayField  {
     private static final int[] arr = {1,2,3};
     public static final List<Integer> VALUES = Collections.unmodifiableList(Arrays.asList(1,2,3));
+    // immutable without boxing, and without a copy per read
+    public static final IntList INTS = IntList.of(arr);
     public static int[] getArr() {
         // do not just return arr
         return arr.clone();
     }
+}
+
+/**
+ * An immutable list of ints. The values are copied once, when the list is created, so it can be shared freely:
+ * readers use {@link #getInt}, {@link #intIterator}, {@link #intStream} or a read-only {@link #asIntBuffer} view,
+ * none of which box or copy. It is also a List&lt;Integer&gt;, for APIs that need one, at the cost of boxing there.
+ */
+final class IntList extends AbstractList<Integer> implements RandomAccess {
+    private static final IntList EMPTY = new IntList(new int[0], 0, 0);
+
+    private final int[] values;
+    private final int from;
+    private final int size;
+
+    private IntList(int[] values, int from, int size) {
+        this.values = values;
+        this.from = from;
+        this.size = size;
+    }
+
+    static IntList of(int... values) {
+        return values.length == 0 ? EMPTY : new IntList(values.clone(), 0, values.length);
+    }
+
+    static IntList copyOf(IntStream values) {
+        int[] array = values.toArray();
+        return array.length == 0 ? EMPTY : new IntList(array, 0, array.length);
+    }
+
+    int getInt(int index) {
+        return values[from + Objects.checkIndex(index, size)];
+    }
+
+    @Override
+    public Integer get(int index) {
+        return getInt(index);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    int indexOf(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[from + i] == value)
+                return i;
+        }
+        return -1;
+    }
+
+    boolean contains(int value) {
+        return indexOf(value) >= 0;
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        return o instanceof Integer i ? indexOf(i.intValue()) : -1;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        if (o instanceof Integer i) {
+            for (int k = size - 1; k >= 0; k--) {
+                if (values[from + k] == i)
+                    return k;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return indexOf(o) >= 0;
+    }
+
+    PrimitiveIterator.OfInt intIterator() {
+        return Spliterators.iterator(intSpliterator());
+    }
+
+    Spliterator.OfInt intSpliterator() {
+        return Arrays.spliterator(values, from, from + size);
+    }
+
+    IntStream intStream() {
+        return Arrays.stream(values, from, from + size);
+    }
+
+    void forEachInt(IntConsumer action) {
+        for (int i = from, end = from + size; i < end; i++)
+            action.accept(values[i]);
+    }
+
+    /**
+     * @return a read-only view of the values, positioned at the first one; each call returns an independent buffer
+     */
+    IntBuffer asIntBuffer() {
+        return IntBuffer.wrap(values, from, size).slice().asReadOnlyBuffer();
+    }
+
+    int[] toIntArray() {
+        return Arrays.copyOfRange(values, from, from + size);
+    }
+
+    /**
+     * @return a view of the range, sharing the values
+     */
+    @Override
+    public IntList subList(int fromIndex, int toIndex) {
+        Objects.checkFromToIndex(fromIndex, toIndex, size);
+        return fromIndex == 0 && toIndex == size ? this : new IntList(values, from + fromIndex, toIndex - fromIndex);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o instanceof IntList other)
+            return Arrays.equals(values, from, from + size, other.values, other.from, other.from + other.size);
+        return super.equals(o);
+    }
+
+    // the List contract's hash, computed without boxing
+    @Override
+    public int hashCode() {
+        int hash = 1;
+        for (int i = from, end = from + size; i < end; i++)
+            hash = 31 * hash + values[i];
+        return hash;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toIntArray());
+    }
 }
\ No newline at end of file
@@ -1,7 +1,12 @@
 package chapter04.classes.and.interfaces;
 
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
 public class Item17_MinimizeMutability implements ILesson {
     @Override
     public void doLesson() {
@@ -16,6 +21,48 @@ public class Item17_MinimizeMutability implements ILesson {
         /*
          * Classes should be immutable unless there’s a very good reason to make them mutable
          */
+
+        /*
+         * The one disadvantage of immutable classes is that they require a separate object for each distinct value.
+         * For multistep or bulk operations, provide a mutable companion class, as StringBuilder is for String.
+         */
+        ComplexArray values = ComplexArray.valueOf(new Complex[]{a, b, c});
+        values.times(values, values); // squares every element in place, no Complex objects created
+        System.out.println(values.sum());
+    }
+
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter04Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        for (int n : new int[]{1 << 12, 1 << 20}) {
+            Complex[] a = new Complex[n];
+            Complex[] b = new Complex[n];
+            Complex[] products = new Complex[n];
+            for (int i = 0; i < n; i++) {
+                a[i] = Complex.valueOf(i % 97, 1 + i % 89);
+                b[i] = Complex.valueOf(1 + i % 13, i % 7);
+            }
+            ComplexArray soaA = ComplexArray.valueOf(a);
+            ComplexArray soaB = ComplexArray.valueOf(b);
+            ComplexArray soaProducts = new ComplexArray(n);
+
+            // reported per element
+            suite.add("Item17.sum.Complex.plus[n=" + n + "]", n, bh -> {
+                Complex s = Complex.valueOf(0, 0);
+                for (Complex c : a)
+                    s = s.plus(c);
+                bh.consume(s);
+            });
+            suite.add("Item17.sum.ComplexArray.sum[n=" + n + "]", n, bh -> bh.consume(soaA.sum()));
+            suite.add("Item17.times.Complex.times[n=" + n + "]", n, bh -> {
+                for (int i = 0; i < n; i++)
+                    products[i] = a[i].times(b[i]);
+                bh.consume(products);
+            });
+            suite.add("Item17.times.ComplexArray.times[n=" + n + "]", n, bh -> bh.consume(soaA.times(soaB, soaProducts)));
+            suite.add("Item17.dividedBy.ComplexArray.dividedBy[n=" + n + "]", n, bh -> bh.consume(soaA.dividedBy(soaB, soaProducts)));
+        }
     }
 }
 
@@ -71,4 +118,244 @@ final class Complex {
     public String toString() {
         return "(" + re + " + " + im + "i)";
     }
-}
\ No newline at end of file
+}
+
+/**
+ * Mutable companion of {@link Complex} for bulk arithmetic: real and imaginary parts are kept in two parallel
+ * {@code double[]} (structure of arrays), so elementwise operations create no objects and run as plain counted loops
+ * over primitive arrays that the JIT can unroll and vectorize. Arrays of at least {@link #PARALLEL_THRESHOLD}
+ * elements are split across the common fork-join pool.
+ *
+ * Every elementwise operation writes into a destination of the same length, which may be {@code this}
+ * or an operand for an in-place update.
+ */
+final class ComplexArray {
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int LEAF_SIZE = 1 << 14;
+
+    private final double[] re;
+    private final double[] im;
+
+    ComplexArray(int length) {
+        re = new double[length];
+        im = new double[length];
+    }
+
+    public static ComplexArray valueOf(Complex[] values) {
+        ComplexArray a = new ComplexArray(values.length);
+        for (int i = 0; i < values.length; i++) {
+            a.re[i] = values[i].realPart();
+            a.im[i] = values[i].imaginaryPart();
+        }
+        return a;
+    }
+
+    public Complex[] toComplexArray() {
+        Complex[] values = new Complex[re.length];
+        for (int i = 0; i < values.length; i++)
+            values[i] = Complex.valueOf(re[i], im[i]);
+        return values;
+    }
+
+    public int length() {
+        return re.length;
+    }
+
+    public double realPart(int i) {
+        return re[i];
+    }
+
+    public double imaginaryPart(int i) {
+        return im[i];
+    }
+
+    public Complex get(int i) {
+        return Complex.valueOf(re[i], im[i]);
+    }
+
+    public void set(int i, double real, double imaginary) {
+        re[i] = real;
+        im[i] = imaginary;
+    }
+
+    public void set(int i, Complex c) {
+        set(i, c.realPart(), c.imaginaryPart());
+    }
+
+    public ComplexArray plus(ComplexArray c, ComplexArray dst) {
+        check(c, dst);
+        forEachRange((from, to) -> {
+            for (int i = from; i < to; i++) {
+                dst.re[i] = re[i] + c.re[i];
+                dst.im[i] = im[i] + c.im[i];
+            }
+        });
+        return dst;
+    }
+
+    public ComplexArray minus(ComplexArray c, ComplexArray dst) {
+        check(c, dst);
+        forEachRange((from, to) -> {
+            for (int i = from; i < to; i++) {
+                dst.re[i] = re[i] - c.re[i];
+                dst.im[i] = im[i] - c.im[i];
+            }
+        });
+        return dst;
+    }
+
+    public ComplexArray times(ComplexArray c, ComplexArray dst) {
+        check(c, dst);
+        forEachRange((from, to) -> {
+            for (int i = from; i < to; i++) {
+                // read all operands first: dst may alias this or c
+                double ar = re[i], ai = im[i], br = c.re[i], bi = c.im[i];
+                dst.re[i] = ar * br - ai * bi;
+                dst.im[i] = ar * bi + ai * br;
+            }
+        });
+        return dst;
+    }
+
+    public ComplexArray dividedBy(ComplexArray c, ComplexArray dst) {
+        check(c, dst);
+        forEachRange((from, to) -> {
+            for (int i = from; i < to; i++) {
+                double ar = re[i], ai = im[i], br = c.re[i], bi = c.im[i];
+                double tmp = br * br + bi * bi;
+                dst.re[i] = (ar * br + ai * bi) / tmp;
+                dst.im[i] = (ai * br - ar * bi) / tmp;
+            }
+        });
+        return dst;
+    }
+
+    public ComplexArray scale(double factor, ComplexArray dst) {
+        check(this, dst);
+        forEachRange((from, to) -> {
+            for (int i = from; i < to; i++) {
+                dst.re[i] = re[i] * factor;
+                dst.im[i] = im[i] * factor;
+            }
+        });
+        return dst;
+    }
+
+    /**
+     * Sum of all elements. Large arrays are summed in parallel, so the rounding can differ slightly from a
+     * left-to-right sum.
+     */
+    public Complex sum() {
+        return Complex.valueOf(sum(re), sum(im));
+    }
+
+    /**
+     * Sum of the squared magnitudes, i.e. the squared Euclidean norm of the array.
+     */
+    public double normSquared() {
+        if (re.length < PARALLEL_THRESHOLD)
+            return normSquared(0, re.length);
+        return ForkJoinPool.commonPool().invoke(new RangeSum(0, re.length, this::normSquared));
+    }
+
+    /**
+     * Product of all elements, computed left to right since every step depends on the previous one.
+     */
+    public Complex product() {
+        double pr = 1, pi = 0;
+        for (int i = 0; i < re.length; i++) {
+            double r = pr * re[i] - pi * im[i];
+            pi = pr * im[i] + pi * re[i];
+            pr = r;
+        }
+        return Complex.valueOf(pr, pi);
+    }
+
+    private double normSquared(int from, int to) {
+        double s = 0;
+        for (int i = from; i < to; i++)
+            s += re[i] * re[i] + im[i] * im[i];
+        return s;
+    }
+
+    private static double sum(double[] a) {
+        RangeReduction sum = (from, to) -> {
+            double s = 0;
+            for (int i = from; i < to; i++)
+                s += a[i];
+            return s;
+        };
+        if (a.length < PARALLEL_THRESHOLD)
+            return sum.reduce(0, a.length);
+        return ForkJoinPool.commonPool().invoke(new RangeSum(0, a.length, sum));
+    }
+
+    private void check(ComplexArray c, ComplexArray dst) {
+        if (c.length() != length() || dst.length() != length())
+            throw new IllegalArgumentException("length mismatch: " + length() + ", " + c.length() + ", " + dst.length());
+    }
+
+    private void forEachRange(RangeAction action) {
+        if (re.length < PARALLEL_THRESHOLD)
+            action.apply(0, re.length);
+        else
+            ForkJoinPool.commonPool().invoke(new RangeTask(0, re.length, action));
+    }
+
+    @FunctionalInterface
+    private interface RangeAction {
+        void apply(int from, int to);
+    }
+
+    @FunctionalInterface
+    private interface RangeReduction {
+        double reduce(int from, int to);
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final RangeAction action;
+
+        RangeTask(int from, int to, RangeAction action) {
+            this.from = from;
+            this.to = to;
+            this.action = action;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                action.apply(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new RangeTask(from, mid, action), new RangeTask(mid, to, action));
+        }
+    }
+
+    private static final class RangeSum extends RecursiveTask<Double> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+        private final RangeReduction reduction;
+
+        RangeSum(int from, int to, RangeReduction reduction) {
+            this.from = from;
+            this.to = to;
+            this.reduction = reduction;
+        }
+
+        @Override
+        protected Double compute() {
+            if (to - from <= LEAF_SIZE)
+                return reduction.reduce(from, to);
+            int mid = (from + to) >>> 1;
+            RangeSum left = new RangeSum(from, mid, reduction);
+            left.fork();
+            double right = new RangeSum(mid, to, reduction).compute();
+            return left.join() + right;
+        }
+    }
+}
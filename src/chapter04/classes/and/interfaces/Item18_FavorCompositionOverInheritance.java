@@ -1,15 +1,57 @@
 package chapter04.classes.and.interfaces;
 
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
 import java.util.Collection;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
 
 public class Item18_FavorCompositionOverInheritance implements ILesson {
     @Override
     public void doLesson() {
+        // the wrapper is independent of the Set it wraps, so the same idea instruments a concurrent set
+        ConcurrentInstrumentedSet<String> s = new ConcurrentInstrumentedSet<>(ConcurrentHashMap.newKeySet(), 1);
+        s.addAll(List.of("Snap", "Crackle", "Pop"));
+        s.contains("Pop");
+        System.out.printf("adds: %d, contains: %d, contains latency: %s\n", s.getAddCount(),
+                s.count(ConcurrentInstrumentedSet.Operation.CONTAINS), s.latency(ConcurrentInstrumentedSet.Operation.CONTAINS));
+    }
+
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter04Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        Integer[] keys = new Integer[1024];
+        for (int i = 0; i < keys.length; i++)
+            keys[i] = i * 2; // half of the lookups below miss
+        int mask = keys.length - 1;
+        Set<Integer> base = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < keys.length; i += 2)
+            base.add(keys[i]);
 
+        Map<String, Set<Integer>> variants = new LinkedHashMap<>();
+        variants.put("raw", base);
+        variants.put("InstrumentedSet", new InstrumentedSet<>(base));
+        variants.put("ConcurrentInstrumentedSet[sampling=off]", new ConcurrentInstrumentedSet<>(base));
+        variants.put("ConcurrentInstrumentedSet[sampling=1/1024]", new ConcurrentInstrumentedSet<>(base, 1024));
+        variants.put("ConcurrentInstrumentedSet[sampling=all]", new ConcurrentInstrumentedSet<>(base, 1));
+        variants.forEach((name, set) -> {
+            int[] i = {0};
+            suite.add("Item18.contains." + name, bh -> bh.consume(set.contains(keys[i[0]++ & mask])));
+        });
+        // add of an existing element: the set does not change, so only the instrumentation differs
+        variants.forEach((name, set) -> {
+            int[] i = {0};
+            suite.add("Item18.add." + name, bh -> bh.consume(set.add(keys[(i[0]++ & mask) & ~1])));
+        });
     }
 }
 
@@ -31,6 +73,169 @@ class InstrumentedSet<E> extends ForwardingSet<E> {
         return addCount;
     }
 }
+/**
+ * Thread-safe counterpart of {@link InstrumentedSet}. Counts are kept in {@link LongAdder}s, which stripe updates
+ * over per-thread cells instead of contending on one field, so no increment is lost and hot paths do not serialize.
+ * It is as thread-safe as the set it wraps.
+ *
+ * Latency can additionally be sampled: with {@code sampleEvery = 2^k}, about one call in 2^k per operation is timed
+ * into a {@link LatencyHistogram}. With sampling off (0) the only cost is the counter increment.
+ * Iteration is counted per {@code iterator()} call; its latency is not sampled since the traversal happens in the caller.
+ */
+class ConcurrentInstrumentedSet<E> extends ForwardingSet<E> {
+    enum Operation {ADD, REMOVE, CONTAINS, ITERATE}
+
+    private final LongAdder[] counts = new LongAdder[Operation.values().length];
+    private final LatencyHistogram[] latencies;
+    private final int sampleMask;
+
+    public ConcurrentInstrumentedSet(Set<E> s) {
+        this(s, 0);
+    }
+
+    /**
+     * @param sampleEvery 0 to disable latency sampling, otherwise a power of two
+     */
+    public ConcurrentInstrumentedSet(Set<E> s, int sampleEvery) {
+        super(s);
+        if (sampleEvery < 0 || Integer.bitCount(sampleEvery) > 1)
+            throw new IllegalArgumentException("sampleEvery must be 0 or a power of two: " + sampleEvery);
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = new LongAdder();
+        sampleMask = sampleEvery - 1;
+        latencies = sampleEvery == 0 ? null : new LatencyHistogram[counts.length];
+        if (latencies != null) {
+            for (int i = 0; i < latencies.length; i++)
+                latencies[i] = new LatencyHistogram();
+        }
+    }
+
+    @Override
+    public boolean add(E e) {
+        counts[Operation.ADD.ordinal()].increment();
+        if (!sampled())
+            return super.add(e);
+        long start = System.nanoTime();
+        try {
+            return super.add(e);
+        } finally {
+            record(Operation.ADD, start);
+        }
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends E> c) {
+        counts[Operation.ADD.ordinal()].add(c.size());
+        return super.addAll(c);
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        counts[Operation.REMOVE.ordinal()].increment();
+        if (!sampled())
+            return super.remove(o);
+        long start = System.nanoTime();
+        try {
+            return super.remove(o);
+        } finally {
+            record(Operation.REMOVE, start);
+        }
+    }
+
+    @Override
+    public boolean removeAll(Collection<?> c) {
+        counts[Operation.REMOVE.ordinal()].add(c.size());
+        return super.removeAll(c);
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        counts[Operation.CONTAINS.ordinal()].increment();
+        if (!sampled())
+            return super.contains(o);
+        long start = System.nanoTime();
+        try {
+            return super.contains(o);
+        } finally {
+            record(Operation.CONTAINS, start);
+        }
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        counts[Operation.CONTAINS.ordinal()].add(c.size());
+        return super.containsAll(c);
+    }
+
+    @Override
+    public Iterator<E> iterator() {
+        counts[Operation.ITERATE.ordinal()].increment();
+        return super.iterator();
+    }
+
+    public long getAddCount() {
+        return count(Operation.ADD);
+    }
+
+    public long count(Operation op) {
+        return counts[op.ordinal()].sum();
+    }
+
+    /**
+     * @return the sampled latencies of {@code op}, or null if sampling is off
+     */
+    public LatencyHistogram latency(Operation op) {
+        return latencies == null ? null : latencies[op.ordinal()];
+    }
+
+    private boolean sampled() {
+        return sampleMask >= 0 && (ThreadLocalRandom.current().nextInt() & sampleMask) == 0;
+    }
+
+    private void record(Operation op, long start) {
+        latencies[op.ordinal()].record(System.nanoTime() - start);
+    }
+}
+
+/**
+ * Lock-free histogram of nanosecond latencies in power-of-two buckets: bucket i holds values in [2^(i-1), 2^i).
+ * Percentiles are therefore accurate to within a factor of two, which is plenty to spot a regression.
+ */
+class LatencyHistogram {
+    private final AtomicLongArray buckets = new AtomicLongArray(65);
+
+    void record(long nanos) {
+        buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(Math.max(0, nanos)));
+    }
+
+    public long count() {
+        long n = 0;
+        for (int i = 0; i < buckets.length(); i++)
+            n += buckets.get(i);
+        return n;
+    }
+
+    /**
+     * @return an upper bound of the given percentile (0-100) in nanoseconds, or 0 if nothing was recorded
+     */
+    public long percentile(double p) {
+        long total = count();
+        long rank = (long) Math.ceil(total * p / 100);
+        long seen = 0;
+        for (int i = 0; i < buckets.length(); i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0)
+                return i == 0 ? 0 : i >= 63 ? Long.MAX_VALUE : (1L << i) - 1;
+        }
+        return 0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d samples, p50 <= %d ns, p99 <= %d ns", count(), percentile(50), percentile(99));
+    }
+}
+
 // Reusable forwarding class
 class ForwardingSet<E> implements Set<E> {
     private final Set<E> s;
@@ -1,5 +1,6 @@
 package chapter04.classes.and.interfaces;
 
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
 public class Item20_PreferInterfacesToAbstractClasses implements ILesson {
@@ -20,6 +21,137 @@ public class Item20_PreferInterfacesToAbstractClasses implements ILesson {
         assert car.start().equals(bike.start());
         assert car.stop().equals(bike.stop());
     }
+
+    /**
+     * Registers the {@code honk()} and {@code addOne()} call sites measured by {@link DispatchBenchmarks}.
+     */
+    static void dispatchBenchmarks(BenchmarkSuite suite, int receivers) {
+        int[] kinds = DispatchBenchmarks.receiverKinds(receivers);
+        String suffix = "[receivers=" + receivers + "]";
+        Vehicle[] vehicles = new Vehicle[kinds.length];
+        ObviousImplementation[] adders = new ObviousImplementation[kinds.length];
+        for (int i = 0; i < kinds.length; i++) {
+            vehicles[i] = vehicle(kinds[i]);
+            adders[i] = adder(kinds[i]);
+        }
+
+        // reported per call
+        suite.add("Item20.Vehicle.honk" + suffix, kinds.length, bh -> {
+            int length = 0;
+            for (Vehicle v : vehicles)
+                length += v.honk().length();
+            bh.consume(length);
+        });
+        suite.add("Item20.ObviousImplementation.addOne" + suffix, kinds.length, bh -> {
+            int sum = 0;
+            for (ObviousImplementation o : adders)
+                sum = o.addOne(sum);
+            bh.consume(sum);
+        });
+    }
+
+    private static Vehicle vehicle(int kind) {
+        return switch (kind) {
+            case 0 -> new Car();
+            case 1 -> new Bike();
+            case 2 -> new Truck();
+            case 3 -> new Bus();
+            case 4 -> new Van();
+            case 5 -> new Tram();
+            case 6 -> new Scooter();
+            case 7 -> new Boat();
+            default -> throw new IllegalArgumentException("kind " + kind);
+        };
+    }
+
+    private static ObviousImplementation adder(int kind) {
+        return switch (kind) {
+            case 0 -> new Consumer();
+            case 1 -> new ConsumerThatOverwrites();
+            case 2 -> new DefaultAdder2();
+            case 3 -> new OverridingAdder3();
+            case 4 -> new DefaultAdder4();
+            case 5 -> new OverridingAdder5();
+            case 6 -> new DefaultAdder6();
+            case 7 -> new OverridingAdder7();
+            default -> throw new IllegalArgumentException("kind " + kind);
+        };
+    }
+
+    // six more vehicles on the skeletal implementation, and six more adders, half keeping the default method
+
+    private static final class Truck extends AbstractVehicle {
+        @Override
+        public String honk() {
+            return "truck";
+        }
+    }
+
+    private static final class Bus extends AbstractVehicle {
+        @Override
+        public String honk() {
+            return "bus";
+        }
+    }
+
+    private static final class Van extends AbstractVehicle {
+        @Override
+        public String honk() {
+            return "van";
+        }
+    }
+
+    private static final class Tram extends AbstractVehicle {
+        @Override
+        public String honk() {
+            return "tram";
+        }
+    }
+
+    private static final class Scooter extends AbstractVehicle {
+        @Override
+        public String honk() {
+            return "scooter";
+        }
+    }
+
+    private static final class Boat extends AbstractVehicle {
+        @Override
+        public String honk() {
+            return "boat";
+        }
+    }
+
+    private static final class DefaultAdder2 implements ObviousImplementation {
+    }
+
+    private static final class OverridingAdder3 implements ObviousImplementation {
+        @Override
+        public int addOne(int i) {
+            return i + 3;
+        }
+    }
+
+    private static final class DefaultAdder4 implements ObviousImplementation {
+    }
+
+    private static final class OverridingAdder5 implements ObviousImplementation {
+        @Override
+        public int addOne(int i) {
+            return i + 5;
+        }
+    }
+
+    private static final class DefaultAdder6 implements ObviousImplementation {
+    }
+
+    private static final class OverridingAdder7 implements ObviousImplementation {
+        @Override
+        public int addOne(int i) {
+            return i + 7;
+        }
+    }
+
 }
 
 // skeletal implementation
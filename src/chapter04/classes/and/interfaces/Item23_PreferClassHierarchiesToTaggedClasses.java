@@ -1,7 +1,14 @@
 package chapter04.classes.and.interfaces;
 
+import benchmarks.BenchmarkSuite;
 import interfaces.ILesson;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
 public class Item23_PreferClassHierarchiesToTaggedClasses implements ILesson {
     @Override
     public void doLesson() {
@@ -10,7 +17,313 @@ public class Item23_PreferClassHierarchiesToTaggedClasses implements ILesson {
 
         BadExampleOfTaggedClass badRect = new BadExampleOfTaggedClass(1 ,2);
         assert badRect.area() == 2;
+
+        // a class hierarchy also makes it easy to keep many figures as columns per kind rather than as objects
+        FigureStore store = new FigureStore();
+        store.add(r);
+        store.add(new Circle(1));
+        store.add(badRect);
+        assert store.totalArea() == 4 + Math.PI;
+        System.out.printf("%d figures, total area %.3f%n", store.size(), store.totalArea());
+    }
+
+    /**
+     * Registers this item's benchmarks; run them through {@link Chapter04Benchmarks}.
+     */
+    static void benchmarks(BenchmarkSuite suite) {
+        // two million shuffled figures, reported per figure
+        int n = 1 << 21;
+        Random random = new Random(42);
+        List<Figure> figures = new ArrayList<>(n);
+        List<Figure> tagged = new ArrayList<>(n);
+        FigureStore store = new FigureStore();
+        for (int i = 0; i < n; i++) {
+            double a = 1 + random.nextDouble() * 9, b = 1 + random.nextDouble() * 9;
+            boolean circle = random.nextBoolean();
+            Figure f = circle ? new Circle(a) : new Rectangle(a, b);
+            figures.add(f);
+            tagged.add(circle ? new BadExampleOfTaggedClass(a) : new BadExampleOfTaggedClass(a, b));
+            store.add(f);
+        }
+        suite.add("Item23.totalArea.List<Figure>", n, bh -> {
+            double sum = 0;
+            for (Figure f : figures)
+                sum += f.area();
+            bh.consume(sum);
+        });
+        suite.add("Item23.totalArea.List<TaggedClass>", n, bh -> {
+            double sum = 0;
+            for (Figure f : tagged)
+                sum += f.area();
+            bh.consume(sum);
+        });
+        suite.add("Item23.totalArea.FigureStore", n, bh -> bh.consume(store.totalArea()));
+
+        suite.add("Item23.sumAreaBetween.List<Figure>", n, bh -> {
+            double sum = 0;
+            for (Figure f : figures) {
+                double area = f.area();
+                if (area >= 10 && area < 50)
+                    sum += area;
+            }
+            bh.consume(sum);
+        });
+        suite.add("Item23.sumAreaBetween.FigureStore", n, bh -> bh.consume(store.sumAreaBetween(10, 50)));
+
+        suite.add("Item23.areaHistogram.List<Figure>", n, bh -> {
+            long[] histogram = new long[32];
+            for (Figure f : figures)
+                histogram[(int) Math.min(31, f.area() / 10)]++;
+            bh.consume(histogram);
+        });
+        suite.add("Item23.areaHistogram.FigureStore", n, bh -> bh.consume(store.areaHistogram(10, 32)));
+    }
+
+    /**
+     * Registers the {@code area()} call sites measured by {@link DispatchBenchmarks}: a virtual call on Figure, a switch
+     * on the tag of a single tagged class, and an instanceof chain over a sealed interface (pattern matching for switch
+     * is not final before Java 21).
+     */
+    static void dispatchBenchmarks(BenchmarkSuite suite, int receivers) {
+        int[] kinds = DispatchBenchmarks.receiverKinds(receivers);
+        Random random = new Random(42);
+        String suffix = "[receivers=" + receivers + "]";
+        Figure[] figures = new Figure[kinds.length];
+        TaggedFigure[] tagged = new TaggedFigure[kinds.length];
+        SealedFigure[] sealed = new SealedFigure[kinds.length];
+        for (int i = 0; i < kinds.length; i++) {
+            double a = 1 + random.nextDouble(), b = 1 + random.nextDouble();
+            figures[i] = figure(kinds[i], a, b);
+            tagged[i] = new TaggedFigure(TaggedFigure.Kind.values()[kinds[i]], a, b);
+            sealed[i] = sealedFigure(kinds[i], a, b);
+        }
+
+        // reported per call
+        suite.add("Item23.area.virtual" + suffix, kinds.length, bh -> {
+            double sum = 0;
+            for (Figure f : figures)
+                sum += f.area();
+            bh.consume(sum);
+        });
+        suite.add("Item23.area.taggedSwitch" + suffix, kinds.length, bh -> {
+            double sum = 0;
+            for (TaggedFigure f : tagged)
+                sum += f.area();
+            bh.consume(sum);
+        });
+        suite.add("Item23.area.sealedInstanceof" + suffix, kinds.length, bh -> {
+            double sum = 0;
+            for (SealedFigure f : sealed)
+                sum += area(f);
+            bh.consume(sum);
+        });
+    }
+
+    private static Figure figure(int kind, double a, double b) {
+        return switch (kind) {
+            case 0 -> new Rectangle(a, b);
+            case 1 -> new Circle(a);
+            case 2 -> new Square(a);
+            case 3 -> new Triangle(a, b);
+            case 4 -> new Ellipse(a, b);
+            case 5 -> new Rhombus(a, b);
+            case 6 -> new Trapezoid(a, b);
+            case 7 -> new Hexagon(a);
+            default -> throw new IllegalArgumentException("kind " + kind);
+        };
+    }
+
+    private static SealedFigure sealedFigure(int kind, double a, double b) {
+        return switch (kind) {
+            case 0 -> new SealedRectangle(a, b);
+            case 1 -> new SealedCircle(a);
+            case 2 -> new SealedSquare(a);
+            case 3 -> new SealedTriangle(a, b);
+            case 4 -> new SealedEllipse(a, b);
+            case 5 -> new SealedRhombus(a, b);
+            case 6 -> new SealedTrapezoid(a, b);
+            case 7 -> new SealedHexagon(a);
+            default -> throw new IllegalArgumentException("kind " + kind);
+        };
+    }
+
+    // the class hierarchy: six more figures next to Rectangle and Circle
+
+    private static final class Square implements Figure {
+        private final double side;
+
+        Square(double side) {
+            this.side = side;
+        }
+
+        @Override
+        public double area() {
+            return side * side;
+        }
+    }
+
+    private static final class Triangle implements Figure {
+        private final double base;
+        private final double height;
+
+        Triangle(double base, double height) {
+            this.base = base;
+            this.height = height;
+        }
+
+        @Override
+        public double area() {
+            return 0.5 * base * height;
+        }
+    }
+
+    private static final class Ellipse implements Figure {
+        private final double a;
+        private final double b;
+
+        Ellipse(double a, double b) {
+            this.a = a;
+            this.b = b;
+        }
+
+        @Override
+        public double area() {
+            return Math.PI * a * b;
+        }
+    }
+
+    private static final class Rhombus implements Figure {
+        private final double p;
+        private final double q;
+
+        Rhombus(double p, double q) {
+            this.p = p;
+            this.q = q;
+        }
+
+        @Override
+        public double area() {
+            return p * q / 2;
+        }
+    }
+
+    private static final class Trapezoid implements Figure {
+        private final double base;
+        private final double top;
+
+        // height 1
+        Trapezoid(double base, double top) {
+            this.base = base;
+            this.top = top;
+        }
+
+        @Override
+        public double area() {
+            return (base + top) / 2;
+        }
+    }
+
+    private static final class Hexagon implements Figure {
+        private final double side;
+
+        Hexagon(double side) {
+            this.side = side;
+        }
+
+        @Override
+        public double area() {
+            return 1.5 * Math.sqrt(3) * side * side;
+        }
+    }
+
+    // the tagged class, with all eight shapes
+
+    private static final class TaggedFigure {
+        enum Kind {RECTANGLE, CIRCLE, SQUARE, TRIANGLE, ELLIPSE, RHOMBUS, TRAPEZOID, HEXAGON}
+
+        private final Kind kind;
+        private final double a;
+        private final double b;
+
+        TaggedFigure(Kind kind, double a, double b) {
+            this.kind = kind;
+            this.a = a;
+            this.b = b;
+        }
+
+        double area() {
+            switch (kind) {
+                case RECTANGLE:
+                    return a * b;
+                case CIRCLE:
+                    return Math.PI * (a * a);
+                case SQUARE:
+                    return a * a;
+                case TRIANGLE:
+                    return 0.5 * a * b;
+                case ELLIPSE:
+                    return Math.PI * a * b;
+                case RHOMBUS:
+                    return a * b / 2;
+                case TRAPEZOID:
+                    return (a + b) / 2;
+                case HEXAGON:
+                    return 1.5 * Math.sqrt(3) * a * a;
+                default:
+                    throw new AssertionError(kind);
+            }
+        }
+    }
+
+    // with a sealed interface: the compiler knows every implementation, the operation lives outside them
+
+    private sealed interface SealedFigure {
+    }
+
+    private record SealedRectangle(double length, double width) implements SealedFigure {
+    }
+
+    private record SealedCircle(double radius) implements SealedFigure {
     }
+
+    private record SealedSquare(double side) implements SealedFigure {
+    }
+
+    private record SealedTriangle(double base, double height) implements SealedFigure {
+    }
+
+    private record SealedEllipse(double a, double b) implements SealedFigure {
+    }
+
+    private record SealedRhombus(double p, double q) implements SealedFigure {
+    }
+
+    private record SealedTrapezoid(double base, double top) implements SealedFigure {
+    }
+
+    private record SealedHexagon(double side) implements SealedFigure {
+    }
+
+    private static double area(SealedFigure f) {
+        if (f instanceof SealedRectangle r)
+            return r.length() * r.width();
+        if (f instanceof SealedCircle c)
+            return Math.PI * (c.radius() * c.radius());
+        if (f instanceof SealedSquare s)
+            return s.side() * s.side();
+        if (f instanceof SealedTriangle t)
+            return 0.5 * t.base() * t.height();
+        if (f instanceof SealedEllipse e)
+            return Math.PI * e.a() * e.b();
+        if (f instanceof SealedRhombus r)
+            return r.p() * r.q() / 2;
+        if (f instanceof SealedTrapezoid t)
+            return (t.base() + t.top()) / 2;
+        if (f instanceof SealedHexagon h)
+            return 1.5 * Math.sqrt(3) * h.side() * h.side();
+        throw new AssertionError(f);
+    }
+
 }
 
 interface Figure {
@@ -67,4 +380,177 @@ class Rectangle implements Figure {
     public double area() {
         return this.width * this.length;
     }
+
+    double width() {
+        return width;
+    }
+
+    double length() {
+        return length;
+    }
+}
+
+class Circle implements Figure {
+
+    private final double radius;
+    Circle(double radius) {
+        this.radius = radius;
+    }
+
+    @Override
+    public double area() {
+        return Math.PI * (radius * radius);
+    }
+
+    double radius() {
+        return radius;
+    }
+}
+
+/**
+ * Many figures stored as primitive columns, one group of columns per kind of figure, instead of one object each.
+ * Queries run a tight loop per kind with no dispatch at all; above {@link #PARALLEL_THRESHOLD} figures of a kind
+ * the loop is split into chunks summed in parallel, which may round differently from the sequential sum.
+ */
+final class FigureStore {
+    enum Kind {RECTANGLE, CIRCLE}
+
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int CHUNK = 1 << 14;
+
+    private double[] widths = new double[16];
+    private double[] lengths = new double[16];
+    private int rectangles;
+    private double[] radii = new double[16];
+    private int circles;
+
+    void addRectangle(double width, double length) {
+        if (rectangles == widths.length) {
+            widths = Arrays.copyOf(widths, rectangles * 2);
+            lengths = Arrays.copyOf(lengths, rectangles * 2);
+        }
+        widths[rectangles] = width;
+        lengths[rectangles++] = length;
+    }
+
+    void addCircle(double radius) {
+        if (circles == radii.length)
+            radii = Arrays.copyOf(radii, circles * 2);
+        radii[circles++] = radius;
+    }
+
+    /**
+     * @throws IllegalArgumentException for a kind of figure the store has no columns for
+     */
+    void add(Figure figure) {
+        if (figure instanceof Rectangle r)
+            addRectangle(r.width(), r.length());
+        else if (figure instanceof Circle c)
+            addCircle(c.radius());
+        else if (figure instanceof BadExampleOfTaggedClass t)
+            addTagged(t);
+        else
+            throw new IllegalArgumentException("Unsupported figure: " + figure.getClass().getName());
+    }
+
+    private void addTagged(BadExampleOfTaggedClass t) {
+        switch (t.shape) {
+            case RECTANGLE -> addRectangle(t.width, t.length);
+            case CIRCLE -> addCircle(t.radius);
+            default -> throw new AssertionError(t.shape);
+        }
+    }
+
+    int size() {
+        return rectangles + circles;
+    }
+
+    int size(Kind kind) {
+        return kind == Kind.RECTANGLE ? rectangles : circles;
+    }
+
+    double totalArea() {
+        return totalArea(Kind.RECTANGLE) + totalArea(Kind.CIRCLE);
+    }
+
+    double totalArea(Kind kind) {
+        return sumAreaBetween(kind, Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+    }
+
+    /**
+     * @return the total area of the figures whose area lies in [min, max)
+     */
+    double sumAreaBetween(double min, double max) {
+        return sumAreaBetween(Kind.RECTANGLE, min, max) + sumAreaBetween(Kind.CIRCLE, min, max);
+    }
+
+    double sumAreaBetween(Kind kind, double min, double max) {
+        int n = size(kind);
+        if (n < PARALLEL_THRESHOLD)
+            return sumAreaBetween(kind, 0, n, min, max);
+        return IntStream.range(0, (n + CHUNK - 1) / CHUNK).parallel()
+                .mapToDouble(c -> sumAreaBetween(kind, c * CHUNK, Math.min(n, c * CHUNK + CHUNK), min, max))
+                .sum();
+    }
+
+    /**
+     * Counts the figures by area in bins of the given width; the last bin also counts every larger area.
+     */
+    long[] areaHistogram(double binWidth, int bins) {
+        if (!(binWidth > 0) || bins <= 0)
+            throw new IllegalArgumentException("binWidth and bins must be positive");
+        long[] histogram = new long[bins];
+        for (Kind kind : Kind.values()) {
+            int n = size(kind);
+            if (n < PARALLEL_THRESHOLD) {
+                histogram(kind, 0, n, binWidth, histogram);
+            } else {
+                long[] chunks = IntStream.range(0, (n + CHUNK - 1) / CHUNK).parallel()
+                        .collect(() -> new long[bins],
+                                (h, c) -> histogram(kind, c * CHUNK, Math.min(n, c * CHUNK + CHUNK), binWidth, h),
+                                FigureStore::merge);
+                merge(histogram, chunks);
+            }
+        }
+        return histogram;
+    }
+
+    private double sumAreaBetween(Kind kind, int from, int to, double min, double max) {
+        double sum = 0;
+        if (kind == Kind.RECTANGLE) {
+            double[] w = widths, l = lengths;
+            for (int i = from; i < to; i++) {
+                double area = w[i] * l[i];
+                sum += area >= min && area < max ? area : 0;
+            }
+        } else {
+            double[] r = radii;
+            for (int i = from; i < to; i++) {
+                double area = Math.PI * (r[i] * r[i]);
+                sum += area >= min && area < max ? area : 0;
+            }
+        }
+        return sum;
+    }
+
+    private long[] histogram(Kind kind, int from, int to, double binWidth, long[] histogram) {
+        int last = histogram.length - 1;
+        double scale = 1 / binWidth;
+        if (kind == Kind.RECTANGLE) {
+            double[] w = widths, l = lengths;
+            for (int i = from; i < to; i++)
+                histogram[(int) Math.min(last, Math.max(0, w[i] * l[i] * scale))]++;
+        } else {
+            double[] r = radii;
+            for (int i = from; i < to; i++)
+                histogram[(int) Math.min(last, Math.max(0, Math.PI * (r[i] * r[i]) * scale))]++;
+        }
+        return histogram;
+    }
+
+    private static long[] merge(long[] into, long[] other) {
+        for (int i = 0; i < into.length; i++)
+            into[i] += other[i];
+        return into;
+    }
 }
\ No newline at end of file
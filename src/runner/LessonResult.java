@@ -0,0 +1,55 @@
+package runner;
+
+import java.util.Locale;
+
+/**
+ * Outcome of a single {@code doLesson()} call. CPU time and allocated bytes are -1 when the JVM
+ * cannot report them for the thread the lesson ran on (e.g. virtual threads).
+ */
+public final class LessonResult {
+    private final String lesson;
+    private final Throwable failure;
+    private final long wallNanos;
+    private final long cpuNanos;
+    private final long allocatedBytes;
+
+    LessonResult(String lesson, Throwable failure, long wallNanos, long cpuNanos, long allocatedBytes) {
+        this.lesson = lesson;
+        this.failure = failure;
+        this.wallNanos = wallNanos;
+        this.cpuNanos = cpuNanos;
+        this.allocatedBytes = allocatedBytes;
+    }
+
+    public String lesson() {
+        return lesson;
+    }
+
+    public boolean failed() {
+        return failure != null;
+    }
+
+    public Throwable failure() {
+        return failure;
+    }
+
+    public long wallNanos() {
+        return wallNanos;
+    }
+
+    public long cpuNanos() {
+        return cpuNanos;
+    }
+
+    public long allocatedBytes() {
+        return allocatedBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "%-70s %10.3f %10s %14s  %s", lesson, wallNanos / 1e6,
+                cpuNanos < 0 ? "n/a" : String.format(Locale.ROOT, "%.3f", cpuNanos / 1e6),
+                allocatedBytes < 0 ? "n/a" : Long.toString(allocatedBytes),
+                failure == null ? "ok" : "FAILED: " + failure);
+    }
+}
@@ -0,0 +1,138 @@
+package runner;
+
+import benchmarks.Allocation;
+import interfaces.ILesson;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.regex.Pattern;
+
+/**
+ * Selects lessons from a catalogue by name and runs them, one task per lesson, timing each {@code doLesson()} call.
+ * A lesson that throws is reported as failed; the remaining lessons still run.
+ *
+ * Command line: {@code [-list] [-threads n | -virtual] [regex...]}. A lesson is selected if any regex is found
+ * in its simple class name (case-insensitive), e.g. {@code Item6_} or {@code Item1[0-4]_}; no regex selects all.
+ * Lessons run one after another unless {@code -threads} or {@code -virtual} is given; on JDKs without virtual threads,
+ * {@code -virtual} falls back to the platform threads.
+ */
+public final class LessonRunner {
+    private final List<Class<? extends ILesson>> catalogue;
+    private final List<Pattern> patterns = new ArrayList<>();
+    private int threads = 1;
+    private boolean virtual;
+    private boolean listOnly;
+
+    public LessonRunner(List<Class<? extends ILesson>> catalogue) {
+        this.catalogue = List.copyOf(catalogue);
+    }
+
+    /**
+     * @return the results of the selected lessons, in catalogue order
+     */
+    public List<LessonResult> run(String[] args) throws InterruptedException {
+        parse(args);
+        List<Class<? extends ILesson>> selected = new ArrayList<>();
+        for (Class<? extends ILesson> lesson : catalogue) {
+            if (selected(lesson.getSimpleName()))
+                selected.add(lesson);
+        }
+        if (listOnly) {
+            selected.forEach(l -> System.out.println(l.getSimpleName()));
+            return List.of();
+        }
+
+        ExecutorService executor = executor();
+        List<LessonResult> results = new ArrayList<>();
+        try {
+            List<Future<LessonResult>> futures = new ArrayList<>();
+            for (Class<? extends ILesson> lesson : selected)
+                futures.add(executor.submit(() -> runOne(lesson)));
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    results.add(futures.get(i).get());
+                } catch (ExecutionException e) {
+                    // runOne catches everything, so this only happens if the task itself could not run
+                    results.add(new LessonResult(selected.get(i).getSimpleName(), e.getCause(), 0, -1, -1));
+                }
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        report(results);
+        return results;
+    }
+
+    private static LessonResult runOne(Class<? extends ILesson> lesson) {
+        String name = lesson.getSimpleName();
+        long cpuBefore = Allocation.currentThreadCpuNanos();
+        long allocBefore = Allocation.currentThreadAllocatedBytes();
+        long start = System.nanoTime();
+        Throwable failure = null;
+        try {
+            lesson.getDeclaredConstructor().newInstance().doLesson();
+        } catch (Throwable t) {
+            failure = t;
+        }
+        long wall = System.nanoTime() - start;
+        long cpuAfter = Allocation.currentThreadCpuNanos();
+        long allocAfter = Allocation.currentThreadAllocatedBytes();
+        return new LessonResult(name, failure, wall,
+                cpuBefore < 0 || cpuAfter < 0 ? -1 : cpuAfter - cpuBefore,
+                allocBefore < 0 || allocAfter < 0 ? -1 : allocAfter - allocBefore);
+    }
+
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-list" -> listOnly = true;
+                case "-virtual" -> virtual = true;
+                case "-threads" -> threads = Integer.parseInt(args[++i]);
+                default -> patterns.add(Pattern.compile(args[i], Pattern.CASE_INSENSITIVE));
+            }
+        }
+        if (threads <= 0)
+            throw new IllegalArgumentException("-threads must be positive");
+    }
+
+    private boolean selected(String lesson) {
+        if (patterns.isEmpty())
+            return true;
+        for (Pattern p : patterns) {
+            if (p.matcher(lesson).find())
+                return true;
+        }
+        return false;
+    }
+
+    // Executors.newVirtualThreadPerTaskExecutor only exists from Java 21; looked up reflectively so that older JDKs still
+    // compile, and run the lessons on the platform pool instead
+    private ExecutorService executor() {
+        if (virtual) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+            } catch (ReflectiveOperationException e) {
+                System.out.printf("virtual threads need Java 21 or later, running on %d platform thread(s)%n", threads);
+            }
+        }
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    private static void report(List<LessonResult> results) {
+        System.out.println();
+        System.out.printf("%-70s %10s %10s %14s  %s%n", "lesson", "wall ms", "cpu ms", "alloc bytes", "status");
+        int failed = 0;
+        for (LessonResult r : results) {
+            System.out.println(r);
+            if (r.failed()) {
+                failed++;
+                r.failure().printStackTrace(System.out);
+            }
+        }
+        System.out.printf("%d lessons, %d failed%n", results.size(), failed);
+    }
+}